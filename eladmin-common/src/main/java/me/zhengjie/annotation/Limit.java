@@ -15,6 +15,7 @@
  */
 package me.zhengjie.annotation;
 
+import me.zhengjie.aspect.LimitAlgorithm;
 import me.zhengjie.aspect.LimitType;
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
@@ -46,4 +47,10 @@ public @interface Limit {
     // 限制类型
     LimitType limitType() default LimitType.CUSTOMER;
 
+    // 限流算法
+    LimitAlgorithm algorithm() default LimitAlgorithm.FIXED_WINDOW;
+
+    // 是否先在本地拒绝明显超限的调用，减少 Redis 访问
+    boolean local() default false;
+
 }
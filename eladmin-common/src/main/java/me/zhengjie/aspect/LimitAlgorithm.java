@@ -0,0 +1,31 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.aspect;
+
+/**
+ * 限流算法
+ * @author /
+ */
+public enum LimitAlgorithm {
+    /** 固定窗口计数，窗口边界处最多可能放行 2 倍请求 */
+    FIXED_WINDOW,
+    /** 滑动日志，记录窗口内每次请求的时间，精确但占用内存与请求数成正比 */
+    SLIDING_LOG,
+    /** 滑动窗口计数，按时间比例加权上一窗口与当前窗口的计数 */
+    SLIDING_WINDOW,
+    /** 令牌桶，容量为 count，每 period 秒匀速补充 count 个令牌 */
+    TOKEN_BUCKET
+}
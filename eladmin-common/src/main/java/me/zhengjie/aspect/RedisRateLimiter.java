@@ -0,0 +1,163 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.aspect;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于 Redis 的限流器，各算法的 Lua 脚本只创建一次，脚本的 SHA1 由 {@link DefaultRedisScript} 缓存，
+ * 执行时使用 EVALSHA，Redis 中没有脚本时才回退为 EVAL。
+ * 可选的本地预限流按节点统计每个 key 的访问次数，单个节点在一个周期内的访问已明显超过限制时直接拒绝，
+ * 不再访问 Redis
+ * @author /
+ */
+@Component
+public class RedisRateLimiter {
+
+    /**
+     * 本地预限流最多记录的 key 数量，超出时清空重新统计
+     */
+    private static final int LOCAL_MAX_KEYS = 10000;
+
+    /**
+     * 本地计数超过限制的倍数后才拒绝，保证只拒绝明显超限的调用方
+     */
+    private static final int LOCAL_FACTOR = 2;
+
+    private static final Map<LimitAlgorithm, RedisScript<Long>> SCRIPTS = new EnumMap<>(LimitAlgorithm.class);
+
+    static {
+        // KEYS[1] 计数 key，ARGV[1] 次数，ARGV[2] 周期毫秒
+        SCRIPTS.put(LimitAlgorithm.FIXED_WINDOW, new DefaultRedisScript<>(
+                "local c = tonumber(redis.call('get', KEYS[1]) or '0')" +
+                "\nif c >= tonumber(ARGV[1]) then return 0 end" +
+                "\nif redis.call('incr', KEYS[1]) == 1 then redis.call('pexpire', KEYS[1], ARGV[2]) end" +
+                "\nreturn 1", Long.class));
+        // KEYS[1] 有序集合，ARGV[3] 当前毫秒，ARGV[4] 本次请求的唯一标识
+        SCRIPTS.put(LimitAlgorithm.SLIDING_LOG, new DefaultRedisScript<>(
+                "local now = tonumber(ARGV[3])" +
+                "\nlocal window = tonumber(ARGV[2])" +
+                "\nredis.call('zremrangebyscore', KEYS[1], 0, now - window)" +
+                "\nif redis.call('zcard', KEYS[1]) >= tonumber(ARGV[1]) then return 0 end" +
+                "\nredis.call('zadd', KEYS[1], now, ARGV[4])" +
+                "\nredis.call('pexpire', KEYS[1], window)" +
+                "\nreturn 1", Long.class));
+        // KEYS[1] 当前窗口计数，KEYS[2] 上一窗口计数，ARGV[3] 当前毫秒
+        SCRIPTS.put(LimitAlgorithm.SLIDING_WINDOW, new DefaultRedisScript<>(
+                "local window = tonumber(ARGV[2])" +
+                "\nlocal current = tonumber(redis.call('get', KEYS[1]) or '0')" +
+                "\nlocal previous = tonumber(redis.call('get', KEYS[2]) or '0')" +
+                "\nlocal elapsed = (tonumber(ARGV[3]) % window) / window" +
+                "\nif previous * (1 - elapsed) + current >= tonumber(ARGV[1]) then return 0 end" +
+                "\nredis.call('incr', KEYS[1])" +
+                "\nredis.call('pexpire', KEYS[1], window * 2)" +
+                "\nreturn 1", Long.class));
+        // KEYS[1] 令牌桶哈希，tokens 剩余令牌，ts 上次补充时间
+        SCRIPTS.put(LimitAlgorithm.TOKEN_BUCKET, new DefaultRedisScript<>(
+                "local capacity = tonumber(ARGV[1])" +
+                "\nlocal window = tonumber(ARGV[2])" +
+                "\nlocal now = tonumber(ARGV[3])" +
+                "\nlocal bucket = redis.call('hmget', KEYS[1], 'tokens', 'ts')" +
+                "\nlocal tokens = tonumber(bucket[1]) or capacity" +
+                "\nlocal ts = tonumber(bucket[2]) or now" +
+                "\ntokens = math.min(capacity, tokens + math.max(now - ts, 0) * capacity / window)" +
+                "\nlocal allowed = 0" +
+                "\nif tokens >= 1 then tokens = tokens - 1; allowed = 1 end" +
+                "\nredis.call('hmset', KEYS[1], 'tokens', tokens, 'ts', math.max(now, ts))" +
+                "\nredis.call('pexpire', KEYS[1], window)" +
+                "\nreturn allowed", Long.class));
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final Map<String, LocalWindow> localWindows = new ConcurrentHashMap<>();
+
+    public RedisRateLimiter(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * 尝试获取一次访问许可
+     * @param algorithm 限流算法
+     * @param key 限流 key
+     * @param count 周期内允许的次数
+     * @param period 周期，单位秒
+     * @param local 是否先进行本地预限流
+     * @return 是否放行
+     */
+    public boolean tryAcquire(LimitAlgorithm algorithm, String key, int count, int period, boolean local) {
+        long window = period * 1000L;
+        long now = System.currentTimeMillis();
+        if (local && !tryAcquireLocal(key, count * LOCAL_FACTOR, window, now)) {
+            return false;
+        }
+        List<String> keys;
+        String[] args;
+        switch (algorithm) {
+            case SLIDING_LOG:
+                keys = Collections.singletonList(key);
+                args = new String[]{String.valueOf(count), String.valueOf(window), String.valueOf(now), UUID.randomUUID().toString()};
+                break;
+            case SLIDING_WINDOW:
+                long index = now / window;
+                keys = Arrays.asList(key + "_" + index, key + "_" + (index - 1));
+                args = new String[]{String.valueOf(count), String.valueOf(window), String.valueOf(now)};
+                break;
+            default:
+                keys = Collections.singletonList(key);
+                args = new String[]{String.valueOf(count), String.valueOf(window), String.valueOf(now)};
+                break;
+        }
+        Long allowed = stringRedisTemplate.execute(SCRIPTS.get(algorithm), keys, (Object[]) args);
+        return allowed != null && allowed == 1L;
+    }
+
+    /**
+     * 本地固定窗口计数，超过阈值时返回 false
+     */
+    private boolean tryAcquireLocal(String key, int threshold, long window, long now) {
+        LocalWindow localWindow = localWindows.get(key);
+        if (localWindow == null) {
+            if (localWindows.size() >= LOCAL_MAX_KEYS) {
+                localWindows.clear();
+            }
+            localWindow = localWindows.computeIfAbsent(key, k -> new LocalWindow());
+        }
+        synchronized (localWindow) {
+            if (now - localWindow.start >= window) {
+                localWindow.start = now;
+                localWindow.count = 0;
+            }
+            return ++localWindow.count <= threshold;
+        }
+    }
+
+    private static class LocalWindow {
+
+        private long start;
+        private int count;
+    }
+}
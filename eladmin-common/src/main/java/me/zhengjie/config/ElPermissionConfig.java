@@ -15,30 +15,90 @@
  */
 package me.zhengjie.config;
 
+import me.zhengjie.utils.LocalCache;
 import me.zhengjie.utils.SecurityUtils;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Service;
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * 用于检验权限对否，即所有的权限检查都通过"el"来检查即可。
+ * 用户的权限集合解析一次后按用户名缓存为不可变的 HashSet，之后的检查只做哈希查找，缓存有数量与存活时间上限，
+ * 角色、菜单或用户变更时由 UserCacheClean 调用 {@link #evict(String)} 或 {@link #evictAll()} 失效
  * @author Zheng Jie
  */
 // 给注册到spring容器的Service起名为el，通过 @el 可以获取该服务并调用里面的check方法
 @Service(value = "el")
 public class ElPermissionConfig {
 
+    private static final String ADMIN = "admin";
+
+    /**
+     * 缓存的用户数量上限
+     */
+    private static final int MAX_SIZE = 10000;
+
+    /**
+     * 缓存存活时间(毫秒)
+     */
+    private static final long TTL = 30 * 60 * 1000L;
+
+    private final LocalCache<String, Authorities> cache = new LocalCache<>(MAX_SIZE, TTL);
+
     public Boolean check(String ...permissions){
-        // 集合或数组 转换为stream()后，注意stream()是链式方法
-        // collection.stream()用法 https://blog.csdn.net/qq_37131111/article/details/99546357
-        // stream().map().collect()用法简要 https://www.cnblogs.com/ngy0217/p/11080840.html
-        // 如下作用为获取用户信息列表UserDetails后，从中遍历获取所有的权限角色到elPermissions集合中
-        // java中双冒号::是lambda语法中的方法引用 https://blog.csdn.net/zhoufanyang_china/article/details/87798829
         // 获取当前用户的所有权限
-        List<String> elPermissions = SecurityUtils.getCurrentUser().getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toList());
+        Authorities authorities = getAuthorities(SecurityUtils.getCurrentUsername());
         // 判断当前用户的所有权限是否包含接口上定义的权限
-        return elPermissions.contains("admin") || Arrays.stream(permissions).anyMatch(elPermissions::contains);
+        if (authorities.admin) {
+            return true;
+        }
+        for (String permission : permissions) {
+            if (authorities.permissions.contains(permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 失效指定用户的权限缓存
+     *
+     * @param username /
+     */
+    public void evict(String username) {
+        cache.invalidate(username);
+    }
+
+    /**
+     * 失效所有用户的权限缓存
+     */
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    private Authorities getAuthorities(String username) {
+        // 解析过程中发生过失效时，结果不会写入缓存
+        return cache.get(username, key -> {
+            // 获取用户信息列表UserDetails后，从中遍历获取所有的权限角色
+            Set<String> permissions = new HashSet<>();
+            for (GrantedAuthority authority : SecurityUtils.getCurrentUser().getAuthorities()) {
+                permissions.add(authority.getAuthority());
+            }
+            return new Authorities(Collections.unmodifiableSet(permissions));
+        });
+    }
+
+    private static final class Authorities {
+
+        private final Set<String> permissions;
+        private final boolean admin;
+
+        private Authorities(Set<String> permissions) {
+            this.permissions = permissions;
+            this.admin = permissions.contains(ADMIN);
+        }
     }
 }
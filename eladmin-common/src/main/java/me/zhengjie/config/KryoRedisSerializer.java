@@ -0,0 +1,141 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.config;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.pool.KryoPool;
+import com.esotericsoftware.kryo.serializers.CompatibleFieldSerializer;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.util.ClassUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Kryo 二进制序列化，数据以 2 字节魔数和 1 字节标记开头，超过阈值时使用 Deflate 压缩。
+ * 读取时没有魔数的数据按 FastJson 格式解析，切换序列化方式后 Redis 中的旧数据仍然可以读取。
+ * 默认使用 {@link CompatibleFieldSerializer}，类增减字段后旧数据也能读取
+ *
+ * @author /
+ */
+class KryoRedisSerializer implements RedisSerializer<Object> {
+
+    private static final byte MAGIC_0 = (byte) 0xE1;
+    private static final byte MAGIC_1 = (byte) 0xAD;
+    private static final byte FLAG_COMPRESSED = 1;
+    private static final int HEADER_LENGTH = 3;
+
+    private final KryoPool pool;
+    private final int compressThreshold;
+    private final RedisSerializer<Object> fallback;
+
+    KryoRedisSerializer(List<String> registrations, int compressThreshold, RedisSerializer<Object> fallback) {
+        this.compressThreshold = compressThreshold;
+        this.fallback = fallback;
+        ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+        this.pool = new KryoPool.Builder(() -> {
+            Kryo kryo = new Kryo();
+            kryo.setRegistrationRequired(false);
+            kryo.setReferences(true);
+            kryo.setDefaultSerializer(CompatibleFieldSerializer.class);
+            // 没有无参构造方法的类直接创建实例
+            kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+            kryo.setClassLoader(classLoader);
+            // Spring Cache 通过引用比较判断空值，必须还原为同一个实例
+            kryo.register(NullValue.class, new NullValueSerializer());
+            for (String className : registrations) {
+                kryo.register(ClassUtils.resolveClassName(className, classLoader));
+            }
+            return kryo;
+        }).softReferences().build();
+    }
+
+    @Override
+    public byte[] serialize(Object object) throws SerializationException {
+        if (object == null) {
+            return new byte[0];
+        }
+        Output output = new Output(256, -1);
+        output.writeByte(MAGIC_0);
+        output.writeByte(MAGIC_1);
+        output.writeByte(0);
+        pool.run(kryo -> {
+            kryo.writeClassAndObject(output, object);
+            return null;
+        });
+        byte[] bytes = output.toBytes();
+        if (compressThreshold <= 0 || bytes.length <= compressThreshold) {
+            return bytes;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2);
+        compressed.write(MAGIC_0);
+        compressed.write(MAGIC_1);
+        compressed.write(FLAG_COMPRESSED);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater)) {
+            out.write(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+        } catch (IOException e) {
+            throw new SerializationException("Could not compress value", e);
+        } finally {
+            deflater.end();
+        }
+        return compressed.toByteArray();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes.length < HEADER_LENGTH || bytes[0] != MAGIC_0 || bytes[1] != MAGIC_1) {
+            // 切换前写入的 JSON 数据
+            return fallback.deserialize(bytes);
+        }
+        Input input = (bytes[2] & FLAG_COMPRESSED) != 0
+                ? new Input(new InflaterInputStream(new ByteArrayInputStream(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH)))
+                : new Input(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+        try {
+            return pool.run(kryo -> kryo.readClassAndObject(input));
+        } catch (RuntimeException e) {
+            throw new SerializationException("Could not read binary value", e);
+        } finally {
+            input.close();
+        }
+    }
+
+    private static class NullValueSerializer extends Serializer<NullValue> {
+
+        @Override
+        public void write(Kryo kryo, Output output, NullValue object) {
+        }
+
+        @Override
+        public NullValue read(Kryo kryo, Input input, Class<NullValue> type) {
+            return (NullValue) NullValue.INSTANCE;
+        }
+    }
+}
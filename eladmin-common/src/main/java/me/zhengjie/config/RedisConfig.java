@@ -23,6 +23,7 @@ import lombok.extern.slf4j.Slf4j;
 import me.zhengjie.utils.StringUtils;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.cache.RedisCacheManagerBuilderCustomizer;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -37,6 +38,7 @@ import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.RedisSerializer;
 import java.nio.charset.Charset;
@@ -57,29 +59,49 @@ import java.util.Map;
 @EnableConfigurationProperties(RedisProperties.class)
 public class RedisConfig extends CachingConfigurerSupport {
 
+    private final RedisSerializer<Object> jsonRedisSerializer = new FastJsonRedisSerializer<>(Object.class);
+    private final RedisSerializer<Object> binaryRedisSerializer;
+    private final RedisSerializerProperties serializerProperties;
+
+    public RedisConfig(RedisSerializerProperties serializerProperties) {
+        this.serializerProperties = serializerProperties;
+        // 二进制序列化读取到没有魔数的数据时，按 FastJson 格式解析旧数据
+        this.binaryRedisSerializer = new KryoRedisSerializer(serializerProperties.getRegistrations(),
+                serializerProperties.getCompressThreshold(), jsonRedisSerializer);
+    }
+
     /**
      *  设置 redis 数据默认过期时间，默认2小时
      *  设置@cacheable 序列化方式
      */
     @Bean
     public RedisCacheConfiguration redisCacheConfiguration(){
-        FastJsonRedisSerializer<Object> fastJsonRedisSerializer = new FastJsonRedisSerializer<>(Object.class);
         RedisCacheConfiguration configuration = RedisCacheConfiguration.defaultCacheConfig();
         configuration = configuration.serializeValuesWith(RedisSerializationContext.
-                SerializationPair.fromSerializer(fastJsonRedisSerializer)).entryTtl(Duration.ofHours(6));
+                SerializationPair.fromSerializer(valueSerializer(serializerProperties.getType()))).entryTtl(Duration.ofHours(6));
         return configuration;
     }
 
+    /**
+     * 按缓存名称单独指定序列化方式
+     */
+    @Bean
+    public RedisCacheManagerBuilderCustomizer redisCacheManagerBuilderCustomizer(RedisCacheConfiguration redisCacheConfiguration) {
+        return builder -> serializerProperties.getCaches().forEach((name, type) ->
+                builder.withCacheConfiguration(name, redisCacheConfiguration.serializeValuesWith(
+                        RedisSerializationContext.SerializationPair.fromSerializer(valueSerializer(type)))));
+    }
+
     @SuppressWarnings("all")
     @Bean(name = "redisTemplate")
     @ConditionalOnMissingBean(name = "redisTemplate")
     public RedisTemplate<Object, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory) {
         RedisTemplate<Object, Object> template = new RedisTemplate<>();
         //序列化
-        FastJsonRedisSerializer<Object> fastJsonRedisSerializer = new FastJsonRedisSerializer<>(Object.class);
-        // value值的序列化采用fastJsonRedisSerializer
-        template.setValueSerializer(fastJsonRedisSerializer);
-        template.setHashValueSerializer(fastJsonRedisSerializer);
+        RedisSerializer<Object> valueSerializer = valueSerializer(serializerProperties.getTemplate());
+        // value值的序列化采用配置的序列化方式
+        template.setValueSerializer(valueSerializer);
+        template.setHashValueSerializer(valueSerializer);
         // 全局开启AutoType，这里方便开发，使用全局的方式
         ParserConfig.getGlobalInstance().setAutoTypeSupport(true);
         // 建议使用这种方式，小范围指定白名单
@@ -91,6 +113,20 @@ public class RedisConfig extends CachingConfigurerSupport {
         return template;
     }
 
+    private RedisSerializer<Object> valueSerializer(RedisSerializerProperties.Type type) {
+        return type == RedisSerializerProperties.Type.BINARY ? binaryRedisSerializer : jsonRedisSerializer;
+    }
+
+    /**
+     * Redis 发布订阅监听容器，各节点间的本地缓存失效等消息均通过该容器接收
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        return container;
+    }
+
     /**
      * 自定义缓存key生成策略，默认将使用该策略
      */
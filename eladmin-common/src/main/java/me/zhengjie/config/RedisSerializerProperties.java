@@ -0,0 +1,67 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redis 序列化配置
+ * @author /
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "redis-serializer")
+public class RedisSerializerProperties {
+
+    /**
+     * 缓存默认的序列化方式
+     */
+    private Type type = Type.JSON;
+
+    /**
+     * 按缓存名称指定序列化方式，未指定的缓存使用 type
+     */
+    private Map<String, Type> caches = new HashMap<>();
+
+    /**
+     * RedisTemplate 的序列化方式
+     */
+    private Type template = Type.JSON;
+
+    /**
+     * 二进制数据超过该字节数时压缩，小于等于 0 时不压缩
+     */
+    private int compressThreshold = 1024;
+
+    /**
+     * 预先注册的类，注册后只写入类编号而不是类名。编号按顺序分配，所有节点的配置必须一致，只能在末尾追加
+     */
+    private List<String> registrations = new ArrayList<>();
+
+    public enum Type {
+        /** FastJson 文本，带类型信息 */
+        JSON,
+        /** Kryo 二进制，可以读取 JSON 格式的旧数据 */
+        BINARY
+    }
+}
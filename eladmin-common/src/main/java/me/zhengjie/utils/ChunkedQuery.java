@@ -0,0 +1,135 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.utils;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.EntityType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 按主键分段读取查询结果，用于导出等需要遍历全部数据的场景。
+ * 每段按 id 升序查询 id 大于上一段最后一条的记录(不使用 offset，也不执行 count)，
+ * 读取下一段前会清空持久化上下文，内存中只保留当前一段实体。
+ * 注意：清空持久化上下文会使之前加载的实体变为游离态，只能在只读场景中使用
+ *
+ * @author /
+ */
+public final class ChunkedQuery<T> implements Iterable<T> {
+
+    /**
+     * 默认每段读取的数量
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final EntityManager entityManager;
+    private final Class<T> domainClass;
+    private final Specification<T> specification;
+    private final int chunkSize;
+
+    private ChunkedQuery(EntityManager entityManager, Class<T> domainClass, Specification<T> specification, int chunkSize) {
+        this.entityManager = entityManager;
+        this.domainClass = domainClass;
+        this.specification = specification;
+        this.chunkSize = chunkSize;
+    }
+
+    public static <T> ChunkedQuery<T> of(EntityManager entityManager, Class<T> domainClass, Specification<T> specification) {
+        return of(entityManager, domainClass, specification, DEFAULT_CHUNK_SIZE);
+    }
+
+    public static <T> ChunkedQuery<T> of(EntityManager entityManager, Class<T> domainClass, Specification<T> specification, int chunkSize) {
+        return new ChunkedQuery<>(entityManager, domainClass, specification, chunkSize);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new ChunkIterator();
+    }
+
+    private class ChunkIterator implements Iterator<T> {
+
+        private final String idName;
+        private List<T> chunk = Collections.emptyList();
+        private int position;
+        private Long lastId;
+        private boolean finished;
+
+        private ChunkIterator() {
+            EntityType<T> entityType = entityManager.getMetamodel().entity(domainClass);
+            this.idName = entityType.getId(entityType.getIdType().getJavaType()).getName();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position < chunk.size()) {
+                return true;
+            }
+            if (finished) {
+                return false;
+            }
+            fetch();
+            return position < chunk.size();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return chunk.get(position++);
+        }
+
+        private void fetch() {
+            if (lastId != null) {
+                // 上一段已经处理完，释放持久化上下文中的实体
+                entityManager.clear();
+            }
+            CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+            CriteriaQuery<T> query = cb.createQuery(domainClass);
+            Root<T> root = query.from(domainClass);
+            List<Predicate> predicates = new ArrayList<>(2);
+            Predicate predicate = specification == null ? null : specification.toPredicate(root, query, cb);
+            if (predicate != null) {
+                predicates.add(predicate);
+            }
+            if (lastId != null) {
+                predicates.add(cb.greaterThan(root.<Long>get(idName), lastId));
+            }
+            query.where(predicates.toArray(new Predicate[0]));
+            query.orderBy(cb.asc(root.get(idName)));
+            chunk = entityManager.createQuery(query).setMaxResults(chunkSize).getResultList();
+            position = 0;
+            if (chunk.size() < chunkSize) {
+                finished = true;
+            }
+            if (!chunk.isEmpty()) {
+                Object id = entityManager.getEntityManagerFactory().getPersistenceUnitUtil()
+                        .getIdentifier(chunk.get(chunk.size() - 1));
+                lastId = (Long) id;
+            }
+        }
+    }
+}
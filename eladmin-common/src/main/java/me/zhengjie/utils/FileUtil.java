@@ -18,10 +18,8 @@ package me.zhengjie.utils;
 import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.util.IdUtil;
 import cn.hutool.poi.excel.BigExcelWriter;
-import cn.hutool.poi.excel.ExcelUtil;
 import me.zhengjie.exception.BadRequestException;
 import org.apache.poi.util.IOUtils;
-import org.apache.poi.xssf.streaming.SXSSFSheet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.multipart.MultipartFile;
@@ -32,9 +30,11 @@ import java.io.*;
 import java.security.MessageDigest;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 /**
  * File工具类，扩展 hutool 工具包
@@ -77,6 +77,20 @@ public class FileUtil extends cn.hutool.core.io.FileUtil {
      */
     private static final DecimalFormat DF = new DecimalFormat("0.00");
 
+    /**
+     * 导出excel时 SXSSF 在内存中保留的行数
+     */
+    private static final int EXCEL_ROW_WINDOW = 500;
+    /**
+     * 导出excel时用于计算列宽的采样行数
+     */
+    private static final int EXCEL_SAMPLE_ROWS = 100;
+    /**
+     * 导出excel的最大列宽(字符数)
+     */
+    private static final int EXCEL_MAX_COLUMN_WIDTH = 60;
+    private static final String EXCEL_DATE_SAMPLE = "yyyy-MM-dd HH:mm:ss";
+
     public static final String IMAGE = "图片";
     public static final String TXT = "文档";
     public static final String MUSIC = "音乐";
@@ -210,26 +224,75 @@ public class FileUtil extends cn.hutool.core.io.FileUtil {
      * 导出excel
      */
     public static void downloadExcel(List<Map<String, Object>> list, HttpServletResponse response) throws IOException {
-        String tempPath = SYS_TEM_DIR + IdUtil.fastSimpleUUID() + ".xlsx";
-        File file = new File(tempPath);
-        BigExcelWriter writer = ExcelUtil.getBigWriter(file);
-        // 一次性写出内容，使用默认样式，强制输出标题
-        writer.write(list, true);
-        SXSSFSheet sheet = (SXSSFSheet)writer.getSheet();
-        //上面需要强转SXSSFSheet  不然没有trackAllColumnsForAutoSizing方法
-        sheet.trackAllColumnsForAutoSizing();
-        //列宽自适应
-        writer.autoSizeColumnAll();
-        //response为HttpServletResponse对象
-        response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet;charset=utf-8");
-        //test.xls是弹出下载对话框的文件名，不能为中文，中文请自行编码
-        response.setHeader("Content-Disposition", "attachment;filename=file.xlsx");
-        ServletOutputStream out = response.getOutputStream();
-        // 终止后删除临时文件
-        file.deleteOnExit();
-        writer.flush(out, true);
-        //此处记得关闭输出Servlet流
-        IoUtil.close(out);
+        downloadExcel(list, Function.identity(), response);
+    }
+
+    /**
+     * 流式导出excel：逐行转换并写入，内存中只保留 SXSSF 窗口内的行，
+     * 工作簿直接写到响应流，不再生成临时文件；列宽根据前若干行采样计算，不再对整个 sheet 自适应
+     *
+     * @param data      待导出的数据，可以是分段查询的结果 {@link ChunkedQuery}
+     * @param rowMapper 将一条数据转换为一行，key 为表头
+     * @param response  /
+     */
+    public static <T> void downloadExcel(Iterable<T> data, Function<T, Map<String, Object>> rowMapper, HttpServletResponse response) throws IOException {
+        BigExcelWriter writer = new BigExcelWriter(EXCEL_ROW_WINDOW);
+        try {
+            int[] widths = null;
+            int sampled = 0;
+            for (T item : data) {
+                Map<String, Object> row = rowMapper.apply(item);
+                boolean head = widths == null;
+                if (head) {
+                    widths = new int[row.size()];
+                    sampleWidths(row.keySet(), widths);
+                }
+                if (sampled < EXCEL_SAMPLE_ROWS) {
+                    sampleWidths(row.values(), widths);
+                    if (++sampled == EXCEL_SAMPLE_ROWS) {
+                        applyWidths(writer, widths);
+                    }
+                }
+                // 第一行时同时写出标题
+                writer.writeRow(row, head);
+            }
+            if (widths != null && sampled < EXCEL_SAMPLE_ROWS) {
+                applyWidths(writer, widths);
+            }
+            //response为HttpServletResponse对象
+            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet;charset=utf-8");
+            //test.xls是弹出下载对话框的文件名，不能为中文，中文请自行编码
+            response.setHeader("Content-Disposition", "attachment;filename=file.xlsx");
+            ServletOutputStream out = response.getOutputStream();
+            writer.flush(out, true);
+        } finally {
+            // 释放 SXSSF 的临时文件
+            writer.close();
+        }
+    }
+
+    private static void sampleWidths(Collection<?> values, int[] widths) {
+        int i = 0;
+        for (Object value : values) {
+            if (i >= widths.length) {
+                break;
+            }
+            String text = value == null ? "" : value instanceof Date ? EXCEL_DATE_SAMPLE : value.toString();
+            int width = 0;
+            for (int j = 0; j < text.length() && width < EXCEL_MAX_COLUMN_WIDTH; j++) {
+                // 中文等全角字符按两个字符宽度计算
+                width += text.charAt(j) > 0xFF ? 2 : 1;
+            }
+            widths[i] = Math.max(widths[i], width);
+            i++;
+        }
+    }
+
+    private static void applyWidths(BigExcelWriter writer, int[] widths) {
+        for (int i = 0; i < widths.length; i++) {
+            int width = Math.min(Math.max(widths[i] + 2, 8), EXCEL_MAX_COLUMN_WIDTH);
+            writer.getSheet().setColumnWidth(i, width * 256);
+        }
     }
 
     public static String getFileType(String type) {
@@ -0,0 +1,143 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.utils;
+
+import cn.hutool.core.io.IoUtil;
+import org.lionsoul.ip2region.DataBlock;
+import org.lionsoul.ip2region.DbConfig;
+import org.lionsoul.ip2region.DbSearcher;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.InputStream;
+
+/**
+ * ip2region 内存查询：整个 db 文件只加载一次到内存，所有线程共享同一个查询器，
+ * 查询结果按 IPv4 的 int 值缓存在定长数组中(直接映射，新结果覆盖旧结果)，命中时无对象分配
+ * @author /
+ */
+public final class IpRegionSearcher {
+
+    /**
+     * 结果缓存槽位数，必须为 2 的幂
+     */
+    private static final int CACHE_SIZE = 1 << 14;
+
+    private final DbSearcher searcher;
+    private final Entry[] cache = new Entry[CACHE_SIZE];
+
+    private IpRegionSearcher(byte[] db) throws Exception {
+        this.searcher = new DbSearcher(new DbConfig(), db);
+        // 首次查询时会初始化索引位置，这里预先执行一次，之后的查询只读共享数据，可并发调用
+        this.searcher.memorySearch(0L);
+    }
+
+    /**
+     * 从 classpath 加载 db 文件
+     *
+     * @param path classpath 路径
+     * @return /
+     * @throws Exception /
+     */
+    public static IpRegionSearcher load(String path) throws Exception {
+        try (InputStream inputStream = new ClassPathResource(path).getInputStream()) {
+            return new IpRegionSearcher(IoUtil.readBytes(inputStream));
+        }
+    }
+
+    /**
+     * 查询 IP 归属地
+     *
+     * @param ip IPv4 地址
+     * @return 解析失败时返回空字符串
+     * @throws Exception /
+     */
+    public String search(String ip) throws Exception {
+        long value = parseIpv4(ip);
+        if (value < 0) {
+            return "";
+        }
+        int key = (int) value;
+        int slot = mix(key) & (CACHE_SIZE - 1);
+        Entry entry = cache[slot];
+        if (entry != null && entry.ip == key) {
+            return entry.region;
+        }
+        DataBlock dataBlock = searcher.memorySearch(value);
+        String region = format(dataBlock.getRegion());
+        cache[slot] = new Entry(key, region);
+        return region;
+    }
+
+    private static String format(String region) {
+        String address = region.replace("0|", "");
+        char symbol = '|';
+        if (address.length() > 0 && address.charAt(address.length() - 1) == symbol) {
+            address = address.substring(0, address.length() - 1);
+        }
+        return address.equals(ElAdminConstant.REGION) ? "内网IP" : address;
+    }
+
+    /**
+     * 不创建中间对象地解析 IPv4
+     *
+     * @param ip /
+     * @return 无符号 32 位值，非法时返回 -1
+     */
+    static long parseIpv4(String ip) {
+        if (ip == null) {
+            return -1;
+        }
+        long result = 0;
+        int segment = -1;
+        int dots = 0;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c == '.') {
+                if (segment < 0 || ++dots > 3) {
+                    return -1;
+                }
+                result = (result << 8) | segment;
+                segment = -1;
+            } else if (c >= '0' && c <= '9') {
+                segment = (segment < 0 ? 0 : segment * 10) + (c - '0');
+                if (segment > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        if (segment < 0 || dots != 3) {
+            return -1;
+        }
+        return (result << 8) | segment;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Entry {
+        private final int ip;
+        private final String region;
+
+        private Entry(int ip, String region) {
+            this.ip = ip;
+            this.region = region;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 进程内近端缓存，有数量与存活时间上限，供各处本地缓存共用。
+ * 读取不加锁；达到容量上限时只抽样少量条目，优先淘汰已过期的，否则淘汰其中最久未访问的，
+ * 每次写入的淘汰开销为常数，不随缓存大小增长。
+ * 加载前记录版本号，失效时版本号递增，加载过程中发生过失效的结果不会写入缓存，避免旧数据覆盖失效
+ *
+ * @param <K> 键
+ * @param <V> 值，为所有调用方共享，使用时不能修改
+ * @author /
+ */
+public class LocalCache<K, V> {
+
+    /**
+     * 每次淘汰抽样的条目数
+     */
+    private static final int EVICTION_SAMPLES = 8;
+
+    private final int maxSize;
+    private final long ttl;
+    private final Map<K, Entry<V>> cache = new ConcurrentHashMap<>();
+    private final AtomicLong version = new AtomicLong();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictCount = new LongAdder();
+
+    /**
+     * @param maxSize 条目数量上限
+     * @param ttl     条目存活时间(毫秒)，小于等于 0 时不按时间过期
+     */
+    public LocalCache(int maxSize, long ttl) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttl = ttl;
+    }
+
+    /**
+     * 获取缓存值
+     *
+     * @param key /
+     * @return 未命中或已过期时返回 null
+     */
+    public V get(K key) {
+        long now = System.currentTimeMillis();
+        Entry<V> entry = cache.get(key);
+        if (entry != null) {
+            if (entry.expireTime > now) {
+                entry.accessTime = now;
+                hitCount.increment();
+                return entry.value;
+            }
+            cache.remove(key, entry);
+        }
+        missCount.increment();
+        return null;
+    }
+
+    /**
+     * 获取缓存值，不计入命中统计，也不更新访问时间
+     *
+     * @param key /
+     * @return 未命中或已过期时返回 null
+     */
+    public V peek(K key) {
+        Entry<V> entry = cache.get(key);
+        return entry != null && entry.expireTime > System.currentTimeMillis() ? entry.value : null;
+    }
+
+    /**
+     * 获取缓存值，未命中时调用 loader 加载，loader 返回 null 时不缓存
+     *
+     * @param key    /
+     * @param loader 加载函数
+     * @return /
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        long current = version.get();
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        value = loader.apply(key);
+        if (value != null) {
+            put(key, value, Long.MAX_VALUE, current);
+        }
+        return value;
+    }
+
+    /**
+     * 当前版本号，自行加载时先记录，再通过 {@link #put(Object, Object, long, long)} 写入
+     *
+     * @return /
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * 写入缓存
+     *
+     * @param key   /
+     * @param value /
+     */
+    public void put(K key, V value) {
+        put(key, value, Long.MAX_VALUE, version.get());
+    }
+
+    /**
+     * 写入缓存，加载开始后发生过失效时放弃写入
+     *
+     * @param key        /
+     * @param value      /
+     * @param expireTime 条目最晚的失效时间点(毫秒)，与存活时间取较早者
+     * @param version    加载开始前的版本号
+     */
+    public void put(K key, V value, long expireTime, long version) {
+        long now = System.currentTimeMillis();
+        if (ttl > 0) {
+            expireTime = Math.min(expireTime, now + ttl);
+        }
+        if (expireTime <= now || this.version.get() != version) {
+            return;
+        }
+        if (!cache.containsKey(key) && cache.size() >= maxSize) {
+            evict(now);
+        }
+        cache.put(key, new Entry<>(value, expireTime, now));
+    }
+
+    /**
+     * 失效指定条目
+     *
+     * @param key /
+     */
+    public void invalidate(K key) {
+        // 先递增版本号，正在加载的旧结果不会再写入缓存
+        version.incrementAndGet();
+        if (cache.remove(key) != null) {
+            evictCount.increment();
+        }
+    }
+
+    /**
+     * 失效全部条目
+     */
+    public void invalidateAll() {
+        version.incrementAndGet();
+        evictCount.add(cache.size());
+        cache.clear();
+    }
+
+    /**
+     * 条目数量，包含尚未清理的过期条目
+     *
+     * @return /
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * 缓存统计信息
+     *
+     * @return /
+     */
+    public Map<String, Object> getStats() {
+        long hit = hitCount.sum();
+        long miss = missCount.sum();
+        Map<String, Object> stats = new LinkedHashMap<>(8);
+        stats.put("size", cache.size());
+        stats.put("hit", hit);
+        stats.put("miss", miss);
+        stats.put("hitRate", hit + miss == 0 ? 0 : (double) hit / (hit + miss));
+        stats.put("evict", evictCount.sum());
+        return stats;
+    }
+
+    /**
+     * 抽样淘汰：抽样条目中已过期的全部移除，没有过期条目时移除最久未访问的一个
+     */
+    private void evict(long now) {
+        K victim = null;
+        long oldest = Long.MAX_VALUE;
+        boolean expired = false;
+        Iterator<Map.Entry<K, Entry<V>>> iterator = cache.entrySet().iterator();
+        for (int i = 0; i < EVICTION_SAMPLES && iterator.hasNext(); i++) {
+            Map.Entry<K, Entry<V>> candidate = iterator.next();
+            Entry<V> entry = candidate.getValue();
+            if (entry.expireTime <= now) {
+                iterator.remove();
+                expired = true;
+            } else if (entry.accessTime < oldest) {
+                oldest = entry.accessTime;
+                victim = candidate.getKey();
+            }
+        }
+        if (!expired && victim != null && cache.remove(victim) != null) {
+            evictCount.increment();
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+        private final long expireTime;
+        private volatile long accessTime;
+
+        private Entry(V value, long expireTime, long accessTime) {
+            this.value = value;
+            this.expireTime = expireTime;
+            this.accessTime = accessTime;
+        }
+    }
+}
@@ -22,8 +22,13 @@ import lombok.extern.slf4j.Slf4j;
 import me.zhengjie.annotation.DataPermission;
 import me.zhengjie.annotation.Query;
 import javax.persistence.criteria.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * fixme：该方法的作用是什么呢？完善Query注解？
@@ -33,6 +38,11 @@ import java.util.*;
 @Slf4j
 @SuppressWarnings({"unchecked","all"})
 public class QueryHelp {
+    /**
+     * 查询条件类 -> 编译后的查询计划，每个查询条件类只解析一次
+     */
+    private static final Map<Class<?>, QueryPlan> PLAN_CACHE = new ConcurrentHashMap<>();
+
     // predicate使用参考 https://blog.csdn.net/weixin_39994296/article/details/114972993
     // 接口一个输入参数，返回一个boolean值
     public static <R, Q> Predicate getPredicate(Root<R> root, Q query, CriteriaBuilder cb) {
@@ -40,8 +50,9 @@ public class QueryHelp {
         if(query == null){
             return cb.and(list.toArray(new Predicate[0]));
         }
+        QueryPlan plan = getPlan(query.getClass());
         // 数据权限验证
-        DataPermission permission = query.getClass().getAnnotation(DataPermission.class);
+        DataPermission permission = plan.permission;
         if(permission != null){
             // 获取数据权限(UserDetails中封装的权限，而权限是在SpringSecurityConfig中定义的规则)
             List<Long> dataScopes = SecurityUtils.getCurrentUserDataScope();
@@ -56,129 +67,143 @@ public class QueryHelp {
             }
         }
         try {
-            List<Field> fields = getAllFields(query.getClass(), new ArrayList<>());
-            for (Field field : fields) {
-                boolean accessible = field.isAccessible();
-                // 设置对象的访问权限，保证对private的属性的访
-                field.setAccessible(true);
-                Query q = field.getAnnotation(Query.class);
-                if (q != null) {
-                    String propName = q.propName();
-                    String joinName = q.joinName();
-                    String blurry = q.blurry();
-                    String attributeName = isBlank(propName) ? field.getName() : propName;
-                    Class<?> fieldType = field.getType();
-                    Object val = field.get(query);
-                    if (ObjectUtil.isNull(val) || "".equals(val)) {
-                        continue;
-                    }
-                    Join join = null;
-                    // 模糊多字段
-                    if (ObjectUtil.isNotEmpty(blurry)) {
-                        String[] blurrys = blurry.split(",");
-                        List<Predicate> orPredicate = new ArrayList<>();
-                        for (String s : blurrys) {
-                            orPredicate.add(cb.like(root.get(s)
-                                    .as(String.class), "%" + val.toString() + "%"));
-                        }
-                        Predicate[] p = new Predicate[orPredicate.size()];
-                        list.add(cb.or(orPredicate.toArray(p)));
-                        continue;
-                    }
-                    if (ObjectUtil.isNotEmpty(joinName)) {
-                        String[] joinNames = joinName.split(">");
-                        for (String name : joinNames) {
-                            switch (q.join()) {
-                                case LEFT:
-                                    if(ObjectUtil.isNotNull(join) && ObjectUtil.isNotNull(val)){
-                                        join = join.join(name, JoinType.LEFT);
-                                    } else {
-                                        join = root.join(name, JoinType.LEFT);
-                                    }
-                                    break;
-                                case RIGHT:
-                                    if(ObjectUtil.isNotNull(join) && ObjectUtil.isNotNull(val)){
-                                        join = join.join(name, JoinType.RIGHT);
-                                    } else {
-                                        join = root.join(name, JoinType.RIGHT);
-                                    }
-                                    break;
-                                case INNER:
-                                    if(ObjectUtil.isNotNull(join) && ObjectUtil.isNotNull(val)){
-                                        join = join.join(name, JoinType.INNER);
-                                    } else {
-                                        join = root.join(name, JoinType.INNER);
-                                    }
-                                    break;
-                                default: break;
-                            }
-                        }
-                    }
-                    switch (q.type()) {
-                        case EQUAL:
-                            list.add(cb.equal(getExpression(attributeName,join,root)
-                                    .as((Class<? extends Comparable>) fieldType),val));
-                            break;
-                        case GREATER_THAN:
-                            list.add(cb.greaterThanOrEqualTo(getExpression(attributeName,join,root)
-                                    .as((Class<? extends Comparable>) fieldType), (Comparable) val));
-                            break;
-                        case LESS_THAN:
-                            list.add(cb.lessThanOrEqualTo(getExpression(attributeName,join,root)
-                                    .as((Class<? extends Comparable>) fieldType), (Comparable) val));
-                            break;
-                        case LESS_THAN_NQ:
-                            list.add(cb.lessThan(getExpression(attributeName,join,root)
-                                    .as((Class<? extends Comparable>) fieldType), (Comparable) val));
-                            break;
-                        case INNER_LIKE:
-                            list.add(cb.like(getExpression(attributeName,join,root)
-                                    .as(String.class), "%" + val.toString() + "%"));
-                            break;
-                        case LEFT_LIKE:
-                            list.add(cb.like(getExpression(attributeName,join,root)
-                                    .as(String.class), "%" + val.toString()));
-                            break;
-                        case RIGHT_LIKE:
-                            list.add(cb.like(getExpression(attributeName,join,root)
-                                    .as(String.class), val.toString() + "%"));
-                            break;
-                        case IN:
-                            if (CollUtil.isNotEmpty((Collection<Object>)val)) {
-                                list.add(getExpression(attributeName,join,root).in((Collection<Object>) val));
-                            }
-                            break;
-                        case NOT_IN:
-                            if (CollUtil.isNotEmpty((Collection<Object>)val)) {
-                                list.add(getExpression(attributeName,join,root).in((Collection<Object>) val).not());
-                            }
-                            break;
-                        case NOT_EQUAL:
-                            list.add(cb.notEqual(getExpression(attributeName,join,root), val));
-                            break;
-                        case NOT_NULL:
-                            list.add(cb.isNotNull(getExpression(attributeName,join,root)));
-                            break;
-                        case IS_NULL:
-                            list.add(cb.isNull(getExpression(attributeName,join,root)));
-                            break;
-                        case BETWEEN:
-                            List<Object> between = new ArrayList<>((List<Object>)val);
-                            list.add(cb.between(getExpression(attributeName, join, root).as((Class<? extends Comparable>) between.get(0).getClass()),
-                                    (Comparable) between.get(0), (Comparable) between.get(1)));
-                            break;
-                        default: break;
+            for (FieldPlan field : plan.fields) {
+                Object val = (Object) field.getter.invokeExact((Object) query);
+                if (ObjectUtil.isNull(val) || "".equals(val)) {
+                    continue;
+                }
+                // 模糊多字段
+                if (field.blurrys != null) {
+                    Predicate[] orPredicate = new Predicate[field.blurrys.length];
+                    for (int i = 0; i < field.blurrys.length; i++) {
+                        orPredicate[i] = cb.like(root.get(field.blurrys[i])
+                                .as(String.class), "%" + val.toString() + "%");
                     }
+                    list.add(cb.or(orPredicate));
+                    continue;
+                }
+                Join join = null;
+                for (String name : field.joinNames) {
+                    join = join != null ? join.join(name, field.joinType) : root.join(name, field.joinType);
+                }
+                Predicate predicate = field.builder.build(cb, getExpression(field.attributeName, join, root), val);
+                if (predicate != null) {
+                    list.add(predicate);
                 }
-                field.setAccessible(accessible);
             }
-        } catch (Exception e) {
+        } catch (Throwable e) {
             log.error(e.getMessage(), e);
         }
         int size = list.size();
         return cb.and(list.toArray(new Predicate[size]));
     }
 
+    /**
+     * 抓取计划：在同一条 SQL 中左连接抓取指定关联，避免逐条懒加载。
+     * 分页查询产生的 count 查询会自动跳过；抓取集合时会对结果去重，
+     * 但分页查询中抓取集合会导致 Hibernate 在内存中分页，分页时只应抓取单值关联，
+     * 集合关联交给实体上的 @BatchSize 批量加载
+     * @param root 查询根
+     * @param query 查询
+     * @param attributes 关联属性名
+     */
+    public static <R> void fetch(Root<R> root, CriteriaQuery<?> query, String... attributes) {
+        Class<?> resultType = query.getResultType();
+        if (Long.class == resultType || long.class == resultType) {
+            return;
+        }
+        for (String attribute : attributes) {
+            root.fetch(attribute, JoinType.LEFT);
+            if (root.getModel().getAttribute(attribute).isCollection()) {
+                query.distinct(true);
+            }
+        }
+    }
+
+    /**
+     * 获取查询条件类的查询计划，首次使用时编译并缓存
+     * @param clazz 查询条件类
+     * @return /
+     */
+    static QueryPlan getPlan(Class<?> clazz) {
+        QueryPlan plan = PLAN_CACHE.get(clazz);
+        if (plan == null) {
+            plan = PLAN_CACHE.computeIfAbsent(clazz, QueryHelp::compile);
+        }
+        return plan;
+    }
+
+    /**
+     * 编译查询计划：解析注解、预先拆分模糊字段与联表路径、生成字段读取句柄并选定条件构造方式
+     */
+    private static QueryPlan compile(Class<?> clazz) {
+        List<FieldPlan> fieldPlans = new ArrayList<>();
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Field field : getAllFields(clazz, new ArrayList<>())) {
+            Query q = field.getAnnotation(Query.class);
+            if (q == null || Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            // 设置对象的访问权限，保证对private的属性的访问
+            field.setAccessible(true);
+            MethodHandle getter;
+            try {
+                getter = lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            String attributeName = isBlank(q.propName()) ? field.getName() : q.propName();
+            String[] blurrys = ObjectUtil.isNotEmpty(q.blurry()) ? q.blurry().split(",") : null;
+            String[] joinNames = ObjectUtil.isNotEmpty(q.joinName()) ? q.joinName().split(">") : new String[0];
+            fieldPlans.add(new FieldPlan(getter, attributeName, blurrys, joinNames,
+                    JoinType.valueOf(q.join().name()), builderOf(q.type(), field.getType())));
+        }
+        return new QueryPlan(clazz.getAnnotation(DataPermission.class), fieldPlans.toArray(new FieldPlan[0]));
+    }
+
+    /**
+     * 根据查询方式选定条件构造方式
+     */
+    private static PredicateBuilder builderOf(Query.Type type, Class<?> fieldType) {
+        Class<? extends Comparable> comparableType = (Class<? extends Comparable>) fieldType;
+        switch (type) {
+            case EQUAL:
+                return (cb, expression, val) -> cb.equal(expression.as(comparableType), val);
+            case GREATER_THAN:
+                return (cb, expression, val) -> cb.greaterThanOrEqualTo(expression.as(comparableType), (Comparable) val);
+            case LESS_THAN:
+                return (cb, expression, val) -> cb.lessThanOrEqualTo(expression.as(comparableType), (Comparable) val);
+            case LESS_THAN_NQ:
+                return (cb, expression, val) -> cb.lessThan(expression.as(comparableType), (Comparable) val);
+            case INNER_LIKE:
+                return (cb, expression, val) -> cb.like(expression.as(String.class), "%" + val.toString() + "%");
+            case LEFT_LIKE:
+                return (cb, expression, val) -> cb.like(expression.as(String.class), "%" + val.toString());
+            case RIGHT_LIKE:
+                return (cb, expression, val) -> cb.like(expression.as(String.class), val.toString() + "%");
+            case IN:
+                return (cb, expression, val) -> CollUtil.isNotEmpty((Collection<Object>) val)
+                        ? expression.in((Collection<Object>) val) : null;
+            case NOT_IN:
+                return (cb, expression, val) -> CollUtil.isNotEmpty((Collection<Object>) val)
+                        ? expression.in((Collection<Object>) val).not() : null;
+            case NOT_EQUAL:
+                return (cb, expression, val) -> cb.notEqual(expression, val);
+            case NOT_NULL:
+                return (cb, expression, val) -> cb.isNotNull(expression);
+            case IS_NULL:
+                return (cb, expression, val) -> cb.isNull(expression);
+            case BETWEEN:
+                return (cb, expression, val) -> {
+                    List<Object> between = new ArrayList<>((List<Object>) val);
+                    return cb.between(expression.as((Class<? extends Comparable>) between.get(0).getClass()),
+                            (Comparable) between.get(0), (Comparable) between.get(1));
+                };
+            default:
+                return (cb, expression, val) -> null;
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private static <T, R> Expression<T> getExpression(String attributeName, Join join, Root<R> root) {
         if (ObjectUtil.isNotEmpty(join)) {
@@ -208,4 +233,54 @@ public class QueryHelp {
         }
         return fields;
     }
+
+    /**
+     * 条件构造方式
+     */
+    @FunctionalInterface
+    interface PredicateBuilder {
+        /**
+         * 构造查询条件
+         * @param cb /
+         * @param expression 字段表达式
+         * @param val 字段值
+         * @return 为 null 时忽略该条件
+         */
+        Predicate build(CriteriaBuilder cb, Expression expression, Object val);
+    }
+
+    /**
+     * 查询条件类的查询计划
+     */
+    static class QueryPlan {
+        final DataPermission permission;
+        final FieldPlan[] fields;
+
+        QueryPlan(DataPermission permission, FieldPlan[] fields) {
+            this.permission = permission;
+            this.fields = fields;
+        }
+    }
+
+    /**
+     * 单个 @Query 字段的查询计划
+     */
+    static class FieldPlan {
+        final MethodHandle getter;
+        final String attributeName;
+        final String[] blurrys;
+        final String[] joinNames;
+        final JoinType joinType;
+        final PredicateBuilder builder;
+
+        FieldPlan(MethodHandle getter, String attributeName, String[] blurrys, String[] joinNames,
+                  JoinType joinType, PredicateBuilder builder) {
+            this.getter = getter;
+            this.attributeName = attributeName;
+            this.blurrys = blurrys;
+            this.joinNames = joinNames;
+            this.joinType = joinType;
+            this.builder = builder;
+        }
+    }
 }
@@ -23,6 +23,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.*;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
@@ -35,6 +36,10 @@ import java.util.concurrent.TimeUnit;
 @SuppressWarnings({"unchecked", "all"})
 public class RedisUtils {
     private static final Logger log = LoggerFactory.getLogger(RedisUtils.class);
+    /**
+     * 批量删除时每条 UNLINK 命令包含的 key 数量
+     */
+    private static final int DEL_BATCH_SIZE = 1000;
     private RedisTemplate<Object, Object> redisTemplate;
     @Value("${jwt.online-key}")
     private String onlineKey;
@@ -192,6 +197,32 @@ public class RedisUtils {
         }
     }
 
+    // ============================pub/sub=============================
+
+    /**
+     * 发布消息，消息体使用 value 的序列化方式
+     *
+     * @param channel 频道
+     * @param message 消息
+     */
+    public void convertAndSend(String channel, Object message) {
+        try {
+            redisTemplate.convertAndSend(channel, message);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 反序列化订阅到的消息体
+     *
+     * @param body 消息体
+     * @return /
+     */
+    public Object deserializeMessage(byte[] body) {
+        return redisTemplate.getValueSerializer().deserialize(body);
+    }
+
     // ============================String=============================
 
     /**
@@ -217,6 +248,20 @@ public class RedisUtils {
         return resultList;
     }
 
+    /**
+     * 批量获取，按 keys 的顺序返回，不存在的 key 对应位置为 null
+     *
+     * @param keys /
+     * @return /
+     */
+    public List<Object> multiGetOrdered(List<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Object> list = redisTemplate.opsForValue().multiGet(new ArrayList<>(keys));
+        return list == null ? new ArrayList<>(Collections.nCopies(keys.size(), null)) : list;
+    }
+
     /**
      * 普通缓存放入
      *
@@ -528,6 +573,94 @@ public class RedisUtils {
         }
     }
 
+    // ===============================zset=================================
+
+    /**
+     * 将数据放入有序集合
+     *
+     * @param key   键
+     * @param value 值
+     * @param score 分数
+     * @return true 成功 false失败
+     */
+    public boolean zAdd(String key, Object value, double score) {
+        try {
+            return redisTemplate.opsForZSet().add(key, value, score);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 从有序集合中移除
+     *
+     * @param key    键
+     * @param values 值 可以是多个
+     * @return 移除的个数
+     */
+    public long zRemove(String key, Object... values) {
+        try {
+            Long count = redisTemplate.opsForZSet().remove(key, values);
+            return count == null ? 0 : count;
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * 按分数从高到低获取有序集合指定区间的值
+     *
+     * @param key   键
+     * @param start 开始
+     * @param end   结束 0 到 -1代表所有值
+     * @return /
+     */
+    public Set<Object> zReverseRange(String key, long start, long end) {
+        try {
+            Set<Object> values = redisTemplate.opsForZSet().reverseRange(key, start, end);
+            return values == null ? new LinkedHashSet<>() : values;
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            return new LinkedHashSet<>();
+        }
+    }
+
+    /**
+     * 按分数区间获取有序集合的值，分数从低到高
+     *
+     * @param key 键
+     * @param min 最小分数(含)
+     * @param max 最大分数(含)
+     * @return /
+     */
+    public Set<Object> zRangeByScore(String key, double min, double max) {
+        try {
+            Set<Object> values = redisTemplate.opsForZSet().rangeByScore(key, min, max);
+            return values == null ? new LinkedHashSet<>() : values;
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            return new LinkedHashSet<>();
+        }
+    }
+
+    /**
+     * 获取有序集合的长度
+     *
+     * @param key 键
+     * @return /
+     */
+    public long zSize(String key) {
+        try {
+            Long size = redisTemplate.opsForZSet().zCard(key);
+            return size == null ? 0 : size;
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            return 0;
+        }
+    }
+
     // ===============================list=================================
 
     /**
@@ -690,19 +823,52 @@ public class RedisUtils {
     }
 
     /**
+     * 批量删除缓存，由前缀与 id 直接拼接出完整的 key，不再使用 KEYS 遍历整个库
+     *
      * @param prefix 前缀
      * @param ids    id
+     * @return 删除数量
      */
-    public void delByKeys(String prefix, Set<Long> ids) {
-        Set<Object> keys = new HashSet<>();
-        for (Long id : ids) {
-            keys.addAll(redisTemplate.keys(new StringBuffer(prefix).append(id).toString()));
+    public long delByKeys(String prefix, Set<Long> ids) {
+        return delByKeys(Collections.singletonList(prefix), ids);
+    }
+
+    /**
+     * 批量删除多个前缀下的缓存，所有 key 通过管道分批 UNLINK，一次往返完成
+     *
+     * @param prefixes 前缀
+     * @param ids      id
+     * @return 删除数量
+     */
+    public long delByKeys(Collection<String> prefixes, Collection<Long> ids) {
+        if (prefixes == null || prefixes.isEmpty() || ids == null || ids.isEmpty()) {
+            return 0;
+        }
+        RedisSerializer keySerializer = redisTemplate.getKeySerializer();
+        List<byte[]> keys = new ArrayList<>(prefixes.size() * ids.size());
+        for (String prefix : prefixes) {
+            for (Long id : ids) {
+                keys.add(keySerializer.serialize(prefix + id));
+            }
+        }
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < keys.size(); i += DEL_BATCH_SIZE) {
+                List<byte[]> batch = keys.subList(i, Math.min(i + DEL_BATCH_SIZE, keys.size()));
+                connection.unlink(batch.toArray(new byte[0][]));
+            }
+            return null;
+        });
+        long count = 0;
+        for (Object result : results) {
+            if (result instanceof Long) {
+                count += (Long) result;
+            }
         }
-        long count = redisTemplate.delete(keys);
         // 此处提示可自行删除
         log.debug("--------------------------------------------");
-        log.debug("成功删除缓存：" + keys.toString());
+        log.debug("成功删除缓存：" + prefixes + "，id数量：" + ids.size());
         log.debug("缓存删除数量：" + count + "个");
         log.debug("--------------------------------------------");
+        return count;
     }
 }
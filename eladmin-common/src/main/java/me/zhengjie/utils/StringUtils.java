@@ -20,22 +20,20 @@ import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import nl.basjes.parse.useragent.UserAgent;
 import nl.basjes.parse.useragent.UserAgentAnalyzer;
-import org.lionsoul.ip2region.DataBlock;
-import org.lionsoul.ip2region.DbConfig;
-import org.lionsoul.ip2region.DbSearcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.ClassPathResource;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.File;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.UnknownHostException;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author Zheng Jie
@@ -45,8 +43,7 @@ public class StringUtils extends org.apache.commons.lang3.StringUtils {
 
     private static final Logger log = LoggerFactory.getLogger(StringUtils.class);
     private static boolean ipLocal = false;
-    private static File file = null;
-    private static DbConfig config;
+    private static IpRegionSearcher ipRegionSearcher;
     private static final char SEPARATOR = '_';
     private static final String UNKNOWN = "unknown";
 
@@ -63,13 +60,11 @@ public class StringUtils extends org.apache.commons.lang3.StringUtils {
             StringUtils.ipLocal = SpringContextHolder.getProperties("ip.local-parsing", false, Boolean.class);
             if (ipLocal) {
                 /*
-                 * 此文件为独享 ，不必关闭
+                 * 整个文件加载到内存，所有线程共享同一个查询器
                  */
                 String path = "ip2region/ip2region.db";
-                String name = "ip2region.db";
                 try {
-                    config = new DbConfig();
-                    file = FileUtil.inputStreamToFile(new ClassPathResource(path).getInputStream(), name);
+                    ipRegionSearcher = IpRegionSearcher.load(path);
                 } catch (Exception e) {
                     log.error(e.getMessage(), e);
                 }
@@ -217,21 +212,28 @@ public class StringUtils extends org.apache.commons.lang3.StringUtils {
      */
     public static String getLocalCityInfo(String ip) {
         try {
-            DataBlock dataBlock = new DbSearcher(config, file.getPath())
-                    .binarySearch(ip);
-            String region = dataBlock.getRegion();
-            String address = region.replace("0|", "");
-            char symbol = '|';
-            if (address.charAt(address.length() - 1) == symbol) {
-                address = address.substring(0, address.length() - 1);
-            }
-            return address.equals(ElAdminConstant.REGION) ? "内网IP" : address;
+            return ipRegionSearcher == null ? "" : ipRegionSearcher.search(ip);
         } catch (Exception e) {
             log.error(e.getMessage(), e);
         }
         return "";
     }
 
+    /**
+     * 批量查询IP归属地，相同的IP只查询一次
+     * @param ips /
+     * @return IP -> 归属地
+     */
+    public static Map<String, String> getCityInfos(Collection<String> ips) {
+        Map<String, String> result = new HashMap<>(ips.size());
+        for (String ip : ips) {
+            if (ip != null && !result.containsKey(ip)) {
+                result.put(ip, getCityInfo(ip));
+            }
+        }
+        return result;
+    }
+
     public static String getBrowser(HttpServletRequest request) {
         UserAgent.ImmutableUserAgent userAgent = userAgentAnalyzer.parse(request.getHeader("User-Agent"));
         return userAgent.get(UserAgent.AGENT_NAME_VERSION).getValue();
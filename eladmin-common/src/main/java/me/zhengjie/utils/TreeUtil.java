@@ -0,0 +1,103 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 树形结构组装工具，根据 id 与 pid 一次遍历建立上级到下级的分组，时间复杂度 O(n)
+ *
+ * @author /
+ */
+public class TreeUtil {
+
+    /**
+     * 组装树
+     * <p>
+     * 有 pid 为空的节点时以这些节点为根；否则认为是按条件查询得到的部分子树，
+     * 以上级不在集合中的节点为根，不会再查询缺失的上级
+     *
+     * @param nodes       所有节点
+     * @param idGetter    获取节点 id
+     * @param pidGetter   获取节点 pid，顶级节点为 null
+     * @param childSetter 设置下级节点，只在存在下级时调用
+     * @param comparator  同级节点的排序，为 null 时保持原有顺序
+     * @return 根节点
+     */
+    public static <T, K> List<T> build(Collection<T> nodes, Function<T, K> idGetter, Function<T, K> pidGetter,
+                                       BiConsumer<T, List<T>> childSetter, Comparator<? super T> comparator) {
+        Map<K, List<T>> children = new HashMap<>(nodes.size() * 4 / 3 + 1);
+        List<T> roots = new ArrayList<>();
+        for (T node : nodes) {
+            K pid = pidGetter.apply(node);
+            if (pid == null) {
+                roots.add(node);
+            } else {
+                children.computeIfAbsent(pid, key -> new ArrayList<>()).add(node);
+            }
+        }
+        for (T node : nodes) {
+            List<T> list = children.get(idGetter.apply(node));
+            if (list != null) {
+                sort(list, comparator);
+                childSetter.accept(node, list);
+            }
+        }
+        if (roots.isEmpty()) {
+            roots = topNodes(nodes, idGetter, pidGetter);
+        }
+        sort(roots, comparator);
+        return roots;
+    }
+
+    /**
+     * 获取上级不在集合中的节点，即各个子树的根，保持原有顺序
+     *
+     * @param nodes     所有节点
+     * @param idGetter  获取节点 id
+     * @param pidGetter 获取节点 pid
+     * @return /
+     */
+    public static <T, K> List<T> topNodes(Collection<T> nodes, Function<T, K> idGetter, Function<T, K> pidGetter) {
+        Set<K> ids = new HashSet<>(nodes.size() * 4 / 3 + 1);
+        for (T node : nodes) {
+            ids.add(idGetter.apply(node));
+        }
+        List<T> result = new ArrayList<>();
+        for (T node : nodes) {
+            K pid = pidGetter.apply(node);
+            if (pid == null || !ids.contains(pid)) {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    private static <T> void sort(List<T> list, Comparator<? super T> comparator) {
+        if (comparator != null && list.size() > 1) {
+            list.sort(comparator);
+        }
+    }
+}
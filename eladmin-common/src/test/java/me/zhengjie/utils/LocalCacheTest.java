@@ -0,0 +1,43 @@
+package me.zhengjie.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LocalCacheTest {
+
+    @Test
+    public void testMaxSize() {
+        LocalCache<Integer, Integer> cache = new LocalCache<>(100, 0);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(i, i);
+        }
+        assertTrue(cache.size() <= 100);
+        // 最后写入的条目不会被淘汰
+        assertEquals(Integer.valueOf(9999), cache.get(9999));
+    }
+
+    @Test
+    public void testExpire() {
+        LocalCache<String, String> cache = new LocalCache<>(10, 0);
+        cache.put("a", "a", System.currentTimeMillis() - 1, cache.version());
+        assertNull(cache.get("a"));
+        cache.put("b", "b", System.currentTimeMillis() + 60000, cache.version());
+        assertEquals("b", cache.get("b"));
+    }
+
+    @Test
+    public void testInvalidateDuringLoad() {
+        LocalCache<String, String> cache = new LocalCache<>(10, 60000);
+        // 加载过程中发生失效，结果返回但不写入缓存
+        assertEquals("old", cache.get("a", key -> {
+            cache.invalidate("other");
+            return "old";
+        }));
+        assertNull(cache.peek("a"));
+        assertEquals("new", cache.get("a", key -> "new"));
+        assertEquals("new", cache.get("a", key -> "other"));
+        cache.invalidateAll();
+        assertNull(cache.get("a"));
+    }
+}
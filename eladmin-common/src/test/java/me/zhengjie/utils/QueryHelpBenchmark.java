@@ -0,0 +1,95 @@
+package me.zhengjie.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QueryHelp.getPredicate 优化前后的基准测试，运行 main 方法即可。
+ * Criteria API 使用开销固定的动态代理替身，两条路径调用次数相同，差异来自字段读取与注解解析
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryHelpBenchmark {
+
+    /**
+     * 接口类型 -> 共享的替身，返回值为接口的方法都返回对应类型的替身
+     */
+    private static final Map<Class<?>, Object> STUBS = new ConcurrentHashMap<>();
+
+    private static final InvocationHandler HANDLER = (proxy, method, args) -> {
+        switch (method.getName()) {
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "stub";
+            default:
+                break;
+        }
+        Class<?> returnType = method.getReturnType();
+        if (returnType.isInterface()) {
+            return stub(returnType);
+        }
+        return returnType == boolean.class ? Boolean.FALSE : null;
+    };
+
+    @Param({"all", "user", "dept"})
+    public String criteria;
+
+    private Object query;
+    private Root<Object> root;
+    private CriteriaBuilder cb;
+
+    @Setup
+    public void setup() {
+        switch (criteria) {
+            case "user":
+                query = new QueryHelpTest.UserCriteria();
+                break;
+            case "dept":
+                query = new QueryHelpTest.DeptQueryCriteria();
+                break;
+            default:
+                query = new QueryHelpTest.AllTypesCriteria();
+                break;
+        }
+        root = stub(Root.class);
+        cb = stub(CriteriaBuilder.class);
+    }
+
+    @Benchmark
+    public Predicate baseline() {
+        return QueryHelpTest.baselinePredicate(root, query, cb);
+    }
+
+    @Benchmark
+    public Predicate compiled() {
+        return QueryHelp.getPredicate(root, query, cb);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(QueryHelpBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type) {
+        return (T) STUBS.computeIfAbsent(type,
+                t -> Proxy.newProxyInstance(QueryHelpBenchmark.class.getClassLoader(), new Class<?>[]{t}, HANDLER));
+    }
+}
@@ -0,0 +1,360 @@
+package me.zhengjie.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.util.ObjectUtil;
+import me.zhengjie.annotation.DataPermission;
+import me.zhengjie.annotation.Query;
+import org.junit.Test;
+import org.mockito.Answers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import javax.persistence.criteria.*;
+import java.lang.reflect.Field;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class QueryHelpTest {
+
+    @Test
+    public void testPlanIsCached() {
+        assertSame(QueryHelp.getPlan(DeptCriteria.class), QueryHelp.getPlan(DeptCriteria.class));
+    }
+
+    @Test
+    public void testCompilePlan() throws Throwable {
+        QueryHelp.QueryPlan plan = QueryHelp.getPlan(DeptCriteria.class);
+        assertNotNull(plan.permission);
+        assertEquals("id", plan.permission.fieldName());
+        // 未标注 @Query 的字段不进入计划，父类字段需要包含
+        assertEquals(4, plan.fields.length);
+
+        DeptCriteria criteria = new DeptCriteria();
+        criteria.blurry = "研发";
+        criteria.enabled = true;
+        criteria.deptName = "华南";
+        ((BaseCriteria) criteria).createBy = "admin";
+        for (QueryHelp.FieldPlan field : plan.fields) {
+            Object val = (Object) field.getter.invokeExact((Object) criteria);
+            switch (field.attributeName) {
+                case "blurry":
+                    assertEquals("研发", val);
+                    assertArrayEquals(new String[]{"name", "description"}, field.blurrys);
+                    break;
+                case "enabled":
+                    assertEquals(true, val);
+                    assertEquals(0, field.joinNames.length);
+                    break;
+                case "name":
+                    assertEquals("华南", val);
+                    assertArrayEquals(new String[]{"dept", "parent"}, field.joinNames);
+                    assertEquals(JoinType.INNER, field.joinType);
+                    break;
+                case "createBy":
+                    assertEquals("admin", val);
+                    break;
+                default:
+                    fail("unexpected field " + field.attributeName);
+            }
+        }
+    }
+
+    @Test
+    public void testPredicateMatchesBaseline() {
+        for (Object criteria : new Object[]{new AllTypesCriteria(), new UserCriteria(), new DeptQueryCriteria()}) {
+            String expected = baseline(criteria);
+            assertEquals(expected, build(criteria));
+            // 计划缓存后再次构造，结果不变
+            assertEquals(expected, build(criteria));
+        }
+    }
+
+    @Test
+    public void testPredicates() {
+        String predicate = build(new AllTypesCriteria());
+        assertTrue(predicate.startsWith("cb.and("));
+        assertTrue(predicate.contains("cb.equal(root.get(id).as(Long), 1)"));
+        assertTrue(predicate.contains("cb.greaterThanOrEqualTo(root.get(createTime).as(Timestamp), 2020-01-01 00:00:00.0)"));
+        assertTrue(predicate.contains("cb.lessThanOrEqualTo(root.get(createTime).as(Timestamp), 2020-12-31 00:00:00.0)"));
+        assertTrue(predicate.contains("cb.lessThan(root.get(level).as(Integer), 3)"));
+        assertTrue(predicate.contains("cb.like(root.get(name).as(String), %研发%)"));
+        assertTrue(predicate.contains("cb.like(root.get(email).as(String), %@qq.com)"));
+        assertTrue(predicate.contains("cb.like(root.get(phone).as(String), 138%)"));
+        assertTrue(predicate.contains("root.get(id).in([7, 8]).not()"));
+        assertTrue(predicate.contains("cb.notEqual(root.get(status), 0)"));
+        assertTrue(predicate.contains("cb.isNotNull(root.get(avatar))"));
+        assertTrue(predicate.contains("cb.isNull(root.get(pid))"));
+        assertTrue(predicate.contains("cb.between(root.get(createTime).as(Timestamp), 2020-01-01 00:00:00.0, 2020-12-31 00:00:00.0)"));
+        assertTrue(predicate.contains("cb.or(cb.like(root.get(email).as(String), %admin%), cb.like(root.get(username).as(String), %admin%))"));
+        assertTrue(predicate.contains("cb.equal(root.join(dept, INNER).join(parent, INNER).get(name).as(String), 华南)"));
+        assertTrue(predicate.contains("root.join(roles, RIGHT).get(id).in([1, 2])"));
+        assertTrue(predicate.contains("cb.equal(root.join(jobs, LEFT).get(name).as(String), 开发)"));
+        // 空集合、null 与空字符串不产生条件
+        assertFalse(predicate.contains("in([])"));
+        assertFalse(predicate.contains("unset"));
+        assertFalse(predicate.contains("blank"));
+    }
+
+    @Test
+    public void testNullQuery() {
+        assertEquals("cb.and()", QueryHelp.getPredicate(symbolic(Root.class, "root"), null,
+                symbolic(CriteriaBuilder.class, "cb")).toString());
+    }
+
+    private static String build(Object criteria) {
+        return QueryHelp.getPredicate(symbolic(Root.class, "root"), criteria, symbolic(CriteriaBuilder.class, "cb")).toString();
+    }
+
+    private static String baseline(Object criteria) {
+        return baselinePredicate(symbolic(Root.class, "root"), criteria, symbolic(CriteriaBuilder.class, "cb")).toString();
+    }
+
+    /**
+     * 记录调用过程的 Criteria API 替身：每次调用返回新的替身，toString 为从根开始的调用链
+     */
+    private static <T> T symbolic(Class<T> type, String description) {
+        return Mockito.mock(type, Mockito.withSettings().defaultAnswer(new Symbolic(description)));
+    }
+
+    private static class Symbolic implements Answer<Object> {
+
+        private final String description;
+
+        private Symbolic(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public Object answer(InvocationOnMock invocation) throws Throwable {
+            String name = invocation.getMethod().getName();
+            if ("toString".equals(name) && invocation.getArguments().length == 0) {
+                return description;
+            }
+            Class<?> returnType = invocation.getMethod().getReturnType();
+            if (!returnType.isInterface()) {
+                return Answers.RETURNS_DEFAULTS.answer(invocation);
+            }
+            String args = Arrays.stream(invocation.getArguments()).map(QueryHelpTest::describe).collect(Collectors.joining(", "));
+            return symbolic(returnType, description + "." + name + "(" + args + ")");
+        }
+    }
+
+    private static String describe(Object arg) {
+        if (arg instanceof Class) {
+            return ((Class<?>) arg).getSimpleName();
+        }
+        if (arg instanceof Object[]) {
+            return Arrays.toString((Object[]) arg);
+        }
+        return String.valueOf(arg);
+    }
+
+    /**
+     * 优化前 QueryHelp.getPredicate 的字段处理逻辑，作为对照
+     */
+    static <R, Q> Predicate baselinePredicate(Root<R> root, Q query, CriteriaBuilder cb) {
+        List<Predicate> list = new ArrayList<>();
+        try {
+            for (Field field : QueryHelp.getAllFields(query.getClass(), new ArrayList<>())) {
+                field.setAccessible(true);
+                Query q = field.getAnnotation(Query.class);
+                if (q == null) {
+                    continue;
+                }
+                String attributeName = q.propName().trim().isEmpty() ? field.getName() : q.propName();
+                Class<?> fieldType = field.getType();
+                Object val = field.get(query);
+                if (ObjectUtil.isNull(val) || "".equals(val)) {
+                    continue;
+                }
+                Join join = null;
+                if (ObjectUtil.isNotEmpty(q.blurry())) {
+                    List<Predicate> orPredicate = new ArrayList<>();
+                    for (String s : q.blurry().split(",")) {
+                        orPredicate.add(cb.like(root.get(s).as(String.class), "%" + val.toString() + "%"));
+                    }
+                    list.add(cb.or(orPredicate.toArray(new Predicate[0])));
+                    continue;
+                }
+                if (ObjectUtil.isNotEmpty(q.joinName())) {
+                    JoinType joinType = JoinType.valueOf(q.join().name());
+                    for (String name : q.joinName().split(">")) {
+                        join = join != null ? join.join(name, joinType) : root.join(name, joinType);
+                    }
+                }
+                Expression expression = join != null ? join.get(attributeName) : root.get(attributeName);
+                switch (q.type()) {
+                    case EQUAL:
+                        list.add(cb.equal(expression.as((Class<? extends Comparable>) fieldType), val));
+                        break;
+                    case GREATER_THAN:
+                        list.add(cb.greaterThanOrEqualTo(expression.as((Class<? extends Comparable>) fieldType), (Comparable) val));
+                        break;
+                    case LESS_THAN:
+                        list.add(cb.lessThanOrEqualTo(expression.as((Class<? extends Comparable>) fieldType), (Comparable) val));
+                        break;
+                    case LESS_THAN_NQ:
+                        list.add(cb.lessThan(expression.as((Class<? extends Comparable>) fieldType), (Comparable) val));
+                        break;
+                    case INNER_LIKE:
+                        list.add(cb.like(expression.as(String.class), "%" + val.toString() + "%"));
+                        break;
+                    case LEFT_LIKE:
+                        list.add(cb.like(expression.as(String.class), "%" + val.toString()));
+                        break;
+                    case RIGHT_LIKE:
+                        list.add(cb.like(expression.as(String.class), val.toString() + "%"));
+                        break;
+                    case IN:
+                        if (CollUtil.isNotEmpty((Collection<Object>) val)) {
+                            list.add(expression.in((Collection<Object>) val));
+                        }
+                        break;
+                    case NOT_IN:
+                        if (CollUtil.isNotEmpty((Collection<Object>) val)) {
+                            list.add(expression.in((Collection<Object>) val).not());
+                        }
+                        break;
+                    case NOT_EQUAL:
+                        list.add(cb.notEqual(expression, val));
+                        break;
+                    case NOT_NULL:
+                        list.add(cb.isNotNull(expression));
+                        break;
+                    case IS_NULL:
+                        list.add(cb.isNull(expression));
+                        break;
+                    case BETWEEN:
+                        List<Object> between = new ArrayList<>((List<Object>) val);
+                        list.add(cb.between(expression.as((Class<? extends Comparable>) between.get(0).getClass()),
+                                (Comparable) between.get(0), (Comparable) between.get(1)));
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return cb.and(list.toArray(new Predicate[0]));
+    }
+
+    static class BaseCriteria {
+        @Query
+        private String createBy;
+    }
+
+    @DataPermission(fieldName = "id")
+    static class DeptCriteria extends BaseCriteria {
+        @Query(blurry = "name,description")
+        private String blurry;
+
+        @Query
+        private Boolean enabled;
+
+        @Query(propName = "name", joinName = "dept>parent", join = Query.Join.INNER)
+        private String deptName;
+
+        private Long pid;
+    }
+
+    static class AllTypesCriteria {
+        @Query
+        private Long id = 1L;
+
+        @Query(type = Query.Type.GREATER_THAN, propName = "createTime")
+        private Timestamp startTime = Timestamp.valueOf("2020-01-01 00:00:00");
+
+        @Query(type = Query.Type.LESS_THAN, propName = "createTime")
+        private Timestamp endTime = Timestamp.valueOf("2020-12-31 00:00:00");
+
+        @Query(type = Query.Type.LESS_THAN_NQ)
+        private Integer level = 3;
+
+        @Query(type = Query.Type.INNER_LIKE)
+        private String name = "研发";
+
+        @Query(type = Query.Type.LEFT_LIKE)
+        private String email = "@qq.com";
+
+        @Query(type = Query.Type.RIGHT_LIKE)
+        private String phone = "138";
+
+        @Query(type = Query.Type.IN, propName = "id")
+        private List<Long> emptyIds = new ArrayList<>();
+
+        @Query(type = Query.Type.NOT_IN, propName = "id")
+        private List<Long> excludeIds = Arrays.asList(7L, 8L);
+
+        @Query(type = Query.Type.NOT_EQUAL)
+        private Integer status = 0;
+
+        @Query(type = Query.Type.NOT_NULL)
+        private Boolean avatar = true;
+
+        @Query(type = Query.Type.IS_NULL)
+        private Boolean pid = true;
+
+        @Query(type = Query.Type.BETWEEN)
+        private List<Timestamp> createTime = Arrays.asList(Timestamp.valueOf("2020-01-01 00:00:00"),
+                Timestamp.valueOf("2020-12-31 00:00:00"));
+
+        @Query(blurry = "email,username")
+        private String blurry = "admin";
+
+        @Query(propName = "name", joinName = "dept>parent", join = Query.Join.INNER)
+        private String deptName = "华南";
+
+        @Query(type = Query.Type.IN, propName = "id", joinName = "roles", join = Query.Join.RIGHT)
+        private Set<Long> roleIds = new LinkedHashSet<>(Arrays.asList(1L, 2L));
+
+        @Query(propName = "name", joinName = "jobs")
+        private String jobName = "开发";
+
+        @Query
+        private String unset;
+
+        @Query
+        private String blank = "";
+    }
+
+    static class UserCriteria {
+        @Query
+        private Long id;
+
+        @Query(propName = "id", type = Query.Type.IN, joinName = "dept")
+        private Set<Long> deptIds = new HashSet<>(Arrays.asList(2L, 5L, 6L, 7L));
+
+        @Query(blurry = "email,username,nickName")
+        private String blurry = "admin";
+
+        @Query
+        private Boolean enabled = true;
+
+        @Query(type = Query.Type.BETWEEN)
+        private List<Timestamp> createTime = Arrays.asList(Timestamp.valueOf("2020-01-01 00:00:00"),
+                Timestamp.valueOf("2020-12-31 00:00:00"));
+    }
+
+    static class DeptQueryCriteria {
+        @Query(type = Query.Type.INNER_LIKE)
+        private String name = "研发";
+
+        @Query
+        private Boolean enabled = true;
+
+        @Query
+        private Long pid = 2L;
+
+        @Query(type = Query.Type.IS_NULL, propName = "pid")
+        private Boolean pidIsNull;
+
+        @Query(type = Query.Type.BETWEEN)
+        private List<Timestamp> createTime = Arrays.asList(Timestamp.valueOf("2020-01-01 00:00:00"),
+                Timestamp.valueOf("2020-12-31 00:00:00"));
+    }
+}
@@ -0,0 +1,80 @@
+package me.zhengjie.utils;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TreeUtilTest {
+
+    @Test
+    public void testBuild() {
+        Node root = new Node(1L, null, 1);
+        Node b = new Node(3L, 1L, 2);
+        Node a = new Node(2L, 1L, 1);
+        Node leaf = new Node(4L, 3L, 1);
+        List<Node> roots = TreeUtil.build(Arrays.asList(root, b, a, leaf), Node::getId, Node::getPid,
+                Node::setChildren, Comparator.comparing(Node::getSort));
+        assertEquals(1, roots.size());
+        assertSame(root, roots.get(0));
+        // 同级按排序字段排列
+        assertEquals(Arrays.asList(a, b), root.getChildren());
+        assertEquals(Arrays.asList(leaf), b.getChildren());
+        assertNull(a.getChildren());
+    }
+
+    @Test
+    public void testBuildPartialTree() {
+        // 上级 1 不在结果中，2 和 5 各自为子树的根
+        Node a = new Node(2L, 1L, 1);
+        Node leaf = new Node(4L, 2L, 1);
+        Node other = new Node(5L, 1L, 2);
+        List<Node> roots = TreeUtil.build(Arrays.asList(leaf, other, a), Node::getId, Node::getPid, Node::setChildren, null);
+        assertEquals(Arrays.asList(other, a), roots);
+        assertEquals(Arrays.asList(leaf), a.getChildren());
+    }
+
+    @Test
+    public void testTopNodes() {
+        Node a = new Node(2L, 1L, 1);
+        Node leaf = new Node(4L, 2L, 1);
+        Node root = new Node(6L, null, 1);
+        assertEquals(Arrays.asList(a, root), TreeUtil.topNodes(Arrays.asList(a, leaf, root), Node::getId, Node::getPid));
+    }
+
+    static class Node {
+        private final Long id;
+        private final Long pid;
+        private final Integer sort;
+        private List<Node> children;
+
+        Node(Long id, Long pid, Integer sort) {
+            this.id = id;
+            this.pid = pid;
+            this.sort = sort;
+        }
+
+        Long getId() {
+            return id;
+        }
+
+        Long getPid() {
+            return pid;
+        }
+
+        Integer getSort() {
+            return sort;
+        }
+
+        List<Node> getChildren() {
+            return children;
+        }
+
+        void setChildren(List<Node> children) {
+            this.children = children;
+        }
+    }
+}
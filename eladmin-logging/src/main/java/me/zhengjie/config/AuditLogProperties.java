@@ -0,0 +1,64 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 操作日志异步批量写入配置
+ * @author /
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "audit-log")
+public class AuditLogProperties {
+
+    /**
+     * 缓冲队列容量
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * 每批写入的最大条数
+     */
+    private int batchSize = 200;
+
+    /**
+     * 最长刷新间隔，单位毫秒
+     */
+    private long flushInterval = 1000;
+
+    /**
+     * 队列积压时的处理策略
+     */
+    private Policy policy = Policy.BLOCK;
+
+    /**
+     * SAMPLE 策略下，队列超过半满后 INFO 日志的保留比例
+     */
+    private double sampleRate = 0.1;
+
+    public enum Policy {
+        /** 队列满时阻塞请求线程，不丢日志 */
+        BLOCK,
+        /** 队列满时丢弃 INFO 日志，ERROR 日志仍然阻塞写入 */
+        DROP_INFO,
+        /** 队列超过半满后按比例采样 INFO 日志，队列满时丢弃 INFO 日志 */
+        SAMPLE
+    }
+}
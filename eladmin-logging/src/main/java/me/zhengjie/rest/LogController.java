@@ -48,7 +48,7 @@ public class LogController {
     @PreAuthorize("@el.check()")
     public void download(HttpServletResponse response, LogQueryCriteria criteria) throws IOException {
         criteria.setLogType("INFO");
-        logService.download(logService.queryAll(criteria), response);
+        logService.download(criteria, response);
     }
 
     @Log("导出错误数据")
@@ -57,7 +57,7 @@ public class LogController {
     @PreAuthorize("@el.check()")
     public void downloadErrorLog(HttpServletResponse response, LogQueryCriteria criteria) throws IOException {
         criteria.setLogType("ERROR");
-        logService.download(logService.queryAll(criteria), response);
+        logService.download(criteria, response);
     }
     @GetMapping
     @ApiOperation("日志查询")
@@ -19,7 +19,6 @@ import me.zhengjie.domain.Log;
 import me.zhengjie.service.dto.LogQueryCriteria;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.springframework.data.domain.Pageable;
-import org.springframework.scheduling.annotation.Async;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
@@ -55,14 +54,13 @@ public interface LogService {
     Object queryAllByUser(LogQueryCriteria criteria, Pageable pageable);
 
     /**
-     * 保存日志数据
+     * 保存日志数据，请求线程中只组装日志后入队，由后台线程批量写入
      * @param username 用户
      * @param browser 浏览器
      * @param ip 请求IP
      * @param joinPoint /
      * @param log 日志实体
      */
-    @Async
     void save(String username, String browser, String ip, ProceedingJoinPoint joinPoint, Log log);
 
     /**
@@ -73,12 +71,12 @@ public interface LogService {
     Object findByErrDetail(Long id);
 
     /**
-     * 导出日志
-     * @param logs 待导出的数据
+     * 导出日志，分段查询并流式写出
+     * @param criteria 查询条件
      * @param response /
      * @throws IOException /
      */
-    void download(List<Log> logs, HttpServletResponse response) throws IOException;
+    void download(LogQueryCriteria criteria, HttpServletResponse response) throws IOException;
 
     /**
      * 删除所有错误日志
@@ -0,0 +1,245 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import me.zhengjie.config.AuditLogProperties;
+import me.zhengjie.domain.Log;
+import me.zhengjie.utils.StringUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 操作日志异步批量写入：请求线程只负责入队，后台线程在达到批量大小或刷新间隔时
+ * 解析 IP 归属地并通过 JDBC 批量插入 sys_log，应用关闭时会将队列中剩余的日志写完，
+ * 关闭后提交的日志由提交线程直接写入，不会阻塞在没有消费者的队列上
+ * @author /
+ */
+@Slf4j
+@Component
+public class AsyncLogWriter implements Runnable {
+
+    private static final String INSERT_SQL = "insert into sys_log (description, log_type, method, params, request_ip, " +
+            "time, username, address, browser, exception_detail, create_time) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String ERROR = "ERROR";
+
+    private final AuditLogProperties properties;
+    private final JdbcTemplate jdbcTemplate;
+    private final BlockingQueue<Log> queue;
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder writtenCount = new LongAdder();
+    private volatile boolean running = true;
+    private Thread worker;
+
+    public AsyncLogWriter(AuditLogProperties properties, JdbcTemplate jdbcTemplate) {
+        this.properties = properties;
+        this.jdbcTemplate = jdbcTemplate;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        worker = new Thread(this, "el-log-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 日志入队，根据配置的策略处理队列积压
+     * @param logEntity /
+     */
+    public void submit(Log logEntity) {
+        logEntity.setCreateTime(new Timestamp(System.currentTimeMillis()));
+        if (!running) {
+            write(logEntity);
+            return;
+        }
+        if (ERROR.equals(logEntity.getLogType())) {
+            put(logEntity);
+            return;
+        }
+        switch (properties.getPolicy()) {
+            case DROP_INFO:
+                offer(logEntity);
+                break;
+            case SAMPLE:
+                if (queue.size() * 2 >= properties.getQueueCapacity()
+                        && ThreadLocalRandom.current().nextDouble() >= properties.getSampleRate()) {
+                    droppedCount.increment();
+                } else {
+                    offer(logEntity);
+                }
+                break;
+            default:
+                put(logEntity);
+                break;
+        }
+    }
+
+    /**
+     * 队列中待写入的日志数量
+     */
+    public int getPending() {
+        return queue.size();
+    }
+
+    public long getDropped() {
+        return droppedCount.sum();
+    }
+
+    public long getWritten() {
+        return writtenCount.sum();
+    }
+
+    @Override
+    public void run() {
+        List<Log> batch = new ArrayList<>(properties.getBatchSize());
+        long deadline = System.currentTimeMillis() + properties.getFlushInterval();
+        while (running || !queue.isEmpty()) {
+            try {
+                long wait = Math.max(deadline - System.currentTimeMillis(), 0);
+                Log first = queue.poll(wait, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, properties.getBatchSize() - batch.size());
+                }
+            } catch (InterruptedException e) {
+                // 关闭时被中断，继续把剩余日志写完
+                running = false;
+            }
+            if (batch.size() >= properties.getBatchSize() || System.currentTimeMillis() >= deadline || !running) {
+                flush(batch);
+                deadline = System.currentTimeMillis() + properties.getFlushInterval();
+            }
+        }
+        flush(batch);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        if (worker == null || !worker.isAlive()) {
+            // 写入线程已退出，关闭过程中入队的日志在当前线程写完
+            drain();
+        } else if (!queue.isEmpty()) {
+            log.warn("日志写入线程未能在关闭前退出，仍有 {} 条日志未写入", queue.size());
+        }
+    }
+
+    /**
+     * 等待队列空出位置，期间写入线程退出时改为直接写入
+     */
+    private void put(Log logEntity) {
+        try {
+            while (!queue.offer(logEntity, 100, TimeUnit.MILLISECONDS)) {
+                if (!running) {
+                    write(logEntity);
+                    return;
+                }
+            }
+            drainIfStopped();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedCount.increment();
+        }
+    }
+
+    /**
+     * 在当前线程直接写入单条日志
+     */
+    private void write(Log logEntity) {
+        List<Log> batch = new ArrayList<>(1);
+        batch.add(logEntity);
+        flush(batch);
+    }
+
+    private void offer(Log logEntity) {
+        if (!queue.offer(logEntity)) {
+            droppedCount.increment();
+            return;
+        }
+        drainIfStopped();
+    }
+
+    /**
+     * 入队与关闭并发时，写入线程可能已经退出，由提交线程把队列写完
+     */
+    private void drainIfStopped() {
+        if (!running && (worker == null || !worker.isAlive())) {
+            drain();
+        }
+    }
+
+    private void drain() {
+        List<Log> batch = new ArrayList<>(properties.getBatchSize());
+        while (queue.drainTo(batch, properties.getBatchSize()) > 0) {
+            flush(batch);
+        }
+    }
+
+    private void flush(List<Log> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            Set<String> ips = new HashSet<>();
+            for (Log logEntity : batch) {
+                ips.add(logEntity.getRequestIp());
+            }
+            Map<String, String> addresses = StringUtils.getCityInfos(ips);
+            for (Log logEntity : batch) {
+                logEntity.setAddress(addresses.get(logEntity.getRequestIp()));
+            }
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, logEntity) -> {
+                ps.setString(1, logEntity.getDescription());
+                ps.setString(2, logEntity.getLogType());
+                ps.setString(3, logEntity.getMethod());
+                ps.setString(4, logEntity.getParams());
+                ps.setString(5, logEntity.getRequestIp());
+                ps.setObject(6, logEntity.getTime());
+                ps.setString(7, logEntity.getUsername());
+                ps.setString(8, logEntity.getAddress());
+                ps.setString(9, logEntity.getBrowser());
+                ps.setBytes(10, logEntity.getExceptionDetail());
+                ps.setTimestamp(11, logEntity.getCreateTime());
+            });
+            writtenCount.add(batch.size());
+        } catch (Exception e) {
+            log.error("操作日志批量写入失败，丢弃 {} 条：{}", batch.size(), e.getMessage(), e);
+            droppedCount.add(batch.size());
+        } finally {
+            batch.clear();
+        }
+    }
+}
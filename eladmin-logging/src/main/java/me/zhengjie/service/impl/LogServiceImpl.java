@@ -37,6 +37,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import javax.persistence.EntityManager;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.lang.reflect.Method;
@@ -54,6 +55,8 @@ public class LogServiceImpl implements LogService {
     private final LogRepository logRepository;
     private final LogErrorMapper logErrorMapper;
     private final LogSmallMapper logSmallMapper;
+    private final AsyncLogWriter asyncLogWriter;
+    private final EntityManager entityManager;
 
     @Override
     public Object queryAll(LogQueryCriteria criteria, Pageable pageable) {
@@ -77,7 +80,6 @@ public class LogServiceImpl implements LogService {
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public void save(String username, String browser, String ip, ProceedingJoinPoint joinPoint, Log log) {
 
         MethodSignature signature = (MethodSignature) joinPoint.getSignature();
@@ -93,13 +95,13 @@ public class LogServiceImpl implements LogService {
         }
         assert log != null;
         log.setRequestIp(ip);
-
-        log.setAddress(StringUtils.getCityInfo(log.getRequestIp()));
         log.setMethod(methodName);
         log.setUsername(username);
+        // 参数在请求线程中序列化，避免请求结束后参数对象被修改或懒加载失效
         log.setParams(getParameter(method, joinPoint.getArgs()));
         log.setBrowser(browser);
-        logRepository.save(log);
+        // IP 归属地解析与入库交给后台线程批量完成
+        asyncLogWriter.submit(log);
     }
 
     /**
@@ -145,9 +147,9 @@ public class LogServiceImpl implements LogService {
     }
 
     @Override
-    public void download(List<Log> logs, HttpServletResponse response) throws IOException {
-        List<Map<String, Object>> list = new ArrayList<>();
-        for (Log log : logs) {
+    public void download(LogQueryCriteria criteria, HttpServletResponse response) throws IOException {
+        ChunkedQuery<Log> logs = ChunkedQuery.of(entityManager, Log.class, (root, criteriaQuery, cb) -> QueryHelp.getPredicate(root, criteria, cb));
+        FileUtil.downloadExcel(logs, log -> {
             Map<String, Object> map = new LinkedHashMap<>();
             map.put("用户名", log.getUsername());
             map.put("IP", log.getRequestIp());
@@ -157,9 +159,8 @@ public class LogServiceImpl implements LogService {
             map.put("请求耗时/毫秒", log.getTime());
             map.put("异常详情", new String(ObjectUtil.isNotNull(log.getExceptionDetail()) ? log.getExceptionDetail() : "".getBytes()));
             map.put("创建日期", log.getCreateTime());
-            list.add(map);
-        }
-        FileUtil.downloadExcel(list, response);
+            return map;
+        }, response);
     }
 
     @Override
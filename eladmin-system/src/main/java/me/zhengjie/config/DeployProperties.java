@@ -0,0 +1,70 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 应用部署配置
+ * @author /
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "deploy")
+public class DeployProperties {
+
+    /**
+     * 同时操作的服务器数量上限
+     */
+    private int threads = 8;
+
+    /**
+     * 等待执行的服务器任务数量上限，超出时由调用线程执行
+     */
+    private int queueCapacity = 200;
+
+    /**
+     * 滚动部署每批服务器占总数的百分比
+     */
+    private int batchPercent = 25;
+
+    /**
+     * 某一批有服务器失败时是否停止后续批次
+     */
+    private boolean stopOnFailure = true;
+
+    /**
+     * 状态轮询的首次等待时间，单位毫秒，之后每次翻倍
+     */
+    private long pollInitialDelay = 1000;
+
+    /**
+     * 状态轮询的最长等待间隔，单位毫秒
+     */
+    private long pollMaxDelay = 16000;
+
+    /**
+     * 等待应用启动的超时时间，单位毫秒
+     */
+    private long startTimeout = 180000;
+
+    /**
+     * 等待应用停止的超时时间，单位毫秒
+     */
+    private long stopTimeout = 10000;
+}
@@ -0,0 +1,73 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 定时任务执行线程池配置，Quartz 线程只负责分发，任务在该线程池中执行
+ * @author /
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "job-executor")
+public class JobExecutorProperties {
+
+    /**
+     * 同时执行的任务数量上限
+     */
+    private int threads = 20;
+
+    /**
+     * 等待执行的任务数量上限
+     */
+    private int queueCapacity = 100;
+
+    /**
+     * 任务执行超时时间，单位毫秒，0 为不限制
+     */
+    private long timeout = 0;
+
+    /**
+     * 按 Bean名称.方法名称 单独指定超时时间，单位毫秒
+     */
+    private Map<String, Long> timeouts = new HashMap<>();
+
+    /**
+     * 子任务从触发到结束的最长等待时间，单位毫秒，超过后按失败处理并取消下游任务；
+     * 任务自身的超时时间更长时以任务超时时间为准
+     */
+    private long subJobTimeout = 3600000;
+
+    /**
+     * 队列已满时的处理策略
+     */
+    private Policy policy = Policy.QUEUE;
+
+    public enum Policy {
+        /** 等待队列空出位置，会阻塞 Quartz 线程 */
+        QUEUE,
+        /** 按错过触发处理，跳过本次执行并记录日志 */
+        SKIP,
+        /** 在 Quartz 线程中直接执行 */
+        CALLER_RUNS
+    }
+}
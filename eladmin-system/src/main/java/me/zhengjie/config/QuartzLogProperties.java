@@ -0,0 +1,55 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 定时任务日志异步批量写入与保留配置
+ * @author /
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "quartz-log")
+public class QuartzLogProperties {
+
+    /**
+     * 缓冲队列容量，队列已满时由任务线程直接写入
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * 每批写入的最大条数
+     */
+    private int batchSize = 200;
+
+    /**
+     * 最长刷新间隔，单位毫秒
+     */
+    private long flushInterval = 1000;
+
+    /**
+     * 明细日志保留天数，更早的日志汇总为每日统计后删除
+     */
+    private int rawDays = 7;
+
+    /**
+     * 汇总检查间隔，单位毫秒
+     */
+    private long rollupInterval = 3600000;
+}
@@ -0,0 +1,143 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.modules.mnt.service;
+
+import lombok.extern.slf4j.Slf4j;
+import me.zhengjie.config.DeployProperties;
+import me.zhengjie.modules.mnt.websocket.MsgType;
+import me.zhengjie.modules.mnt.websocket.SocketMsg;
+import me.zhengjie.modules.mnt.websocket.WebSocketServer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 多服务器操作编排：服务器按批次滚动执行，同一批内的服务器在有界线程池中并发执行，
+ * 每台服务器开始、结束以及整体进度都会推送到 WebSocket
+ *
+ * @author /
+ */
+@Slf4j
+@Component
+public class DeployOrchestrator {
+
+    private static final String SID = "deploy";
+
+    private final DeployProperties properties;
+    private final ThreadPoolExecutor executor;
+
+    public DeployOrchestrator(DeployProperties properties) {
+        this.properties = properties;
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        this.executor = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(),
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "el-deploy-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // 队列满时由调用线程执行，保证任务不丢失
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 按批次执行，每批服务器数量为配置的百分比
+     *
+     * @param action     操作名称，用于进度消息
+     * @param servers    服务器
+     * @param nameGetter 服务器名称
+     * @param task       对单台服务器执行的操作，返回是否成功
+     * @return 成功的服务器数量
+     */
+    public <T> int rolling(String action, List<T> servers, Function<T, String> nameGetter, Predicate<T> task) {
+        return run(action, servers, nameGetter, task, properties.getBatchPercent());
+    }
+
+    /**
+     * 所有服务器作为一批并发执行
+     */
+    public <T> int parallel(String action, List<T> servers, Function<T, String> nameGetter, Predicate<T> task) {
+        return run(action, servers, nameGetter, task, 100);
+    }
+
+    private <T> int run(String action, List<T> servers, Function<T, String> nameGetter, Predicate<T> task, int batchPercent) {
+        int total = servers.size();
+        int batchSize = Math.max(1, (int) Math.ceil(total * Math.min(Math.max(batchPercent, 1), 100) / 100d));
+        AtomicInteger finished = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        for (int from = 0; from < total; from += batchSize) {
+            List<T> batch = servers.subList(from, Math.min(from + batchSize, total));
+            if (batchSize < total) {
+                sendMsg(String.format("%s：第 %d 批，共 %d 台服务器", action, from / batchSize + 1, batch.size()), MsgType.INFO);
+            }
+            List<Future<?>> futures = new ArrayList<>(batch.size());
+            for (T server : batch) {
+                futures.add(executor.submit(() -> {
+                    String name = nameGetter.apply(server);
+                    boolean success;
+                    try {
+                        success = task.test(server);
+                    } catch (Exception e) {
+                        log.error(e.getMessage(), e);
+                        sendMsg(String.format("服务器:%s<br>%s异常：%s", name, action, e.getMessage()), MsgType.ERROR);
+                        success = false;
+                    }
+                    if (!success) {
+                        failed.incrementAndGet();
+                    }
+                    sendMsg(String.format("%s进度：%d/%d，失败 %d", action, finished.incrementAndGet(), total, failed.get()),
+                            success ? MsgType.INFO : MsgType.ERROR);
+                }));
+            }
+            // 等待本批全部结束再开始下一批
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return finished.get() - failed.get();
+                } catch (ExecutionException e) {
+                    log.error(e.getMessage(), e);
+                }
+            }
+            if (failed.get() > 0 && properties.isStopOnFailure() && from + batchSize < total) {
+                sendMsg(String.format("%s：有服务器失败，已停止剩余 %d 台服务器", action, total - from - batchSize), MsgType.ERROR);
+                break;
+            }
+        }
+        return finished.get() - failed.get();
+    }
+
+    private void sendMsg(String msg, MsgType msgType) {
+        WebSocketServer.sendInfo(new SocketMsg(msg, msgType), SID);
+    }
+}
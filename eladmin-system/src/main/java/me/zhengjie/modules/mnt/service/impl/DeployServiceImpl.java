@@ -19,6 +19,7 @@ import cn.hutool.core.date.DatePattern;
 import cn.hutool.core.date.DateUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import me.zhengjie.config.DeployProperties;
 import me.zhengjie.exception.BadRequestException;
 import me.zhengjie.modules.mnt.domain.App;
 import me.zhengjie.modules.mnt.domain.Deploy;
@@ -26,6 +27,7 @@ import me.zhengjie.modules.mnt.domain.DeployHistory;
 import me.zhengjie.modules.mnt.domain.ServerDeploy;
 import me.zhengjie.modules.mnt.repository.DeployRepository;
 import me.zhengjie.modules.mnt.service.DeployHistoryService;
+import me.zhengjie.modules.mnt.service.DeployOrchestrator;
 import me.zhengjie.modules.mnt.service.DeployService;
 import me.zhengjie.modules.mnt.service.ServerDeployService;
 import me.zhengjie.modules.mnt.service.dto.AppDto;
@@ -61,10 +63,8 @@ public class DeployServiceImpl implements DeployService {
 	private final DeployMapper deployMapper;
 	private final ServerDeployService serverDeployService;
 	private final DeployHistoryService deployHistoryService;
-	/**
-	 * 循环次数
-	 */
-	private final Integer count = 30;
+	private final DeployOrchestrator deployOrchestrator;
+	private final DeployProperties properties;
 
 
 	@Override
@@ -129,15 +129,25 @@ public class DeployServiceImpl implements DeployService {
 			sendMsg("包对应应用信息不存在", MsgType.ERROR);
 			throw new BadRequestException("包对应应用信息不存在");
 		}
+		// 备份记录需要当前用户，进入线程池前获取
+		String username = SecurityUtils.getCurrentUsername();
+		List<ServerDeployDto> servers = new ArrayList<>(deploy.getDeploys());
+		deployOrchestrator.rolling("部署", servers, ServerDeployDto::getName,
+				server -> deployServer(server, app, fileSavePath, id, username));
+	}
+
+	/**
+	 * 部署到单台服务器
+	 * @return 是否启动成功
+	 */
+	private boolean deployServer(ServerDeployDto deployDTO, AppDto app, String fileSavePath, Long id, String username) {
 		int port = app.getPort();
 		//这个是服务器部署路径
 		String uploadPath = app.getUploadPath();
-		StringBuilder sb = new StringBuilder();
 		String msg;
-		Set<ServerDeployDto> deploys = deploy.getDeploys();
-		for (ServerDeployDto deployDTO : deploys) {
-			String ip = deployDTO.getIp();
-			ExecuteShellUtil executeShellUtil = getExecuteShellUtil(ip);
+		String ip = deployDTO.getIp();
+		ExecuteShellUtil executeShellUtil = new ExecuteShellUtil(ip, deployDTO.getAccount(), deployDTO.getPassword(), deployDTO.getPort());
+		try {
 			//判断是否第一次部署
 			boolean flag = checkFile(executeShellUtil, app);
 			//第一步要确认服务器上有这个目录
@@ -146,52 +156,73 @@ public class DeployServiceImpl implements DeployService {
 			executeShellUtil.execute("mkdir -p " + app.getDeployPath());
 			//上传文件
 			msg = String.format("登陆到服务器:%s", ip);
-			ScpClientUtil scpClientUtil = getScpClientUtil(ip);
+			// 与命令执行共用同一个 SSH 会话
+			ScpClientUtil scpClientUtil = executeShellUtil.getScpClient();
 			log.info(msg);
 			sendMsg(msg, MsgType.INFO);
 			msg = String.format("上传文件到服务器:%s<br>目录:%s下，请稍等...", ip, uploadPath);
 			sendMsg(msg, MsgType.INFO);
 			scpClientUtil.putFile(fileSavePath, uploadPath);
 			if (flag) {
-				sendMsg("停止原来应用", MsgType.INFO);
+				sendMsg(ip + "：停止原来应用", MsgType.INFO);
 				//停止应用
 				stopApp(port, executeShellUtil);
-				sendMsg("备份原来应用", MsgType.INFO);
+				sendMsg(ip + "：备份原来应用", MsgType.INFO);
 				//备份应用
-				backupApp(executeShellUtil, ip, app.getDeployPath()+FILE_SEPARATOR, app.getName(), app.getBackupPath()+FILE_SEPARATOR, id);
+				backupApp(executeShellUtil, ip, app.getDeployPath()+FILE_SEPARATOR, app.getName(), app.getBackupPath()+FILE_SEPARATOR, id, username);
 			}
-			sendMsg("部署应用", MsgType.INFO);
+			sendMsg(ip + "：部署应用", MsgType.INFO);
 			//部署文件,并启动应用
 			String deployScript = app.getDeployScript();
 			executeShellUtil.execute(deployScript);
-			sleep(3);
-			sendMsg("应用部署中，请耐心等待部署结果，或者稍后手动查看部署状态", MsgType.INFO);
-			int i  = 0;
-			boolean result = false;
-			// 由于启动应用需要时间，所以需要循环获取状态，如果超过30次，则认为是启动失败
-			while (i++ < count){
-				result = checkIsRunningStatus(port, executeShellUtil);
-				if(result){
-					break;
-				}
-				// 休眠6秒
-				sleep(6);
-			}
+			sendMsg(ip + "：应用部署中，请耐心等待部署结果，或者稍后手动查看部署状态", MsgType.INFO);
+			boolean result = waitForStatus(port, executeShellUtil, true, properties.getStartTimeout());
+			StringBuilder sb = new StringBuilder();
 			sb.append("服务器:").append(deployDTO.getName()).append("<br>应用:").append(app.getName());
 			sendResultMsg(result, sb);
+			return result;
+		} finally {
 			executeShellUtil.close();
 		}
 	}
 
-	private void sleep(int second) {
+	/**
+	 * 按指数退避轮询应用状态，直到达到期望状态或超时
+	 * @param port 端口
+	 * @param executeShellUtil /
+	 * @param running 期望的状态
+	 * @param timeout 超时时间，单位毫秒
+	 * @return 是否达到期望状态
+	 */
+	private boolean waitForStatus(int port, ExecuteShellUtil executeShellUtil, boolean running, long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		long delay = properties.getPollInitialDelay();
+		while (true) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (!sleepMillis(Math.min(delay, Math.max(remaining, 0)))) {
+				return false;
+			}
+			if (checkIsRunningStatus(port, executeShellUtil) == running) {
+				return true;
+			}
+			if (System.currentTimeMillis() >= deadline) {
+				return false;
+			}
+			delay = Math.min(delay * 2, properties.getPollMaxDelay());
+		}
+	}
+
+	private boolean sleepMillis(long millis) {
 		try {
-			Thread.sleep(second * 1000);
+			Thread.sleep(millis);
+			return true;
 		} catch (InterruptedException e) {
-			log.error(e.getMessage(),e);
+			Thread.currentThread().interrupt();
+			return false;
 		}
 	}
 
-	private void backupApp(ExecuteShellUtil executeShellUtil, String ip, String fileSavePath, String appName, String backupPath, Long id) {
+	private void backupApp(ExecuteShellUtil executeShellUtil, String ip, String fileSavePath, String appName, String backupPath, Long id, String username) {
 		String deployDate = DateUtil.format(new Date(), DatePattern.PURE_DATETIME_PATTERN);
 		StringBuilder sb = new StringBuilder();
 		backupPath += appName + FILE_SEPARATOR + deployDate + "\n";
@@ -203,7 +234,7 @@ public class DeployServiceImpl implements DeployService {
 		//还原信息入库
 		DeployHistory deployHistory = new DeployHistory();
 		deployHistory.setAppName(appName);
-		deployHistory.setDeployUser(SecurityUtils.getCurrentUsername());
+		deployHistory.setDeployUser(username);
 		deployHistory.setIp(ip);
 		deployHistory.setDeployId(id);
 		deployHistoryService.create(deployHistory);
@@ -234,32 +265,31 @@ public class DeployServiceImpl implements DeployService {
 	}
 
 	private void sendMsg(String msg, MsgType msgType) {
-		try {
-			WebSocketServer.sendInfo(new SocketMsg(msg, msgType), "deploy");
-		} catch (IOException e) {
-			log.error(e.getMessage(),e);
-		}
+		WebSocketServer.sendInfo(new SocketMsg(msg, msgType), "deploy");
 	}
 
 	@Override
 	public String serverStatus(Deploy resources) {
-		Set<ServerDeploy> serverDeploys = resources.getDeploys();
 		App app = resources.getApp();
-		for (ServerDeploy serverDeploy : serverDeploys) {
+		deployOrchestrator.parallel("状态查询", new ArrayList<>(resources.getDeploys()), ServerDeploy::getName, serverDeploy -> {
 			StringBuilder sb = new StringBuilder();
 			ExecuteShellUtil executeShellUtil = getExecuteShellUtil(serverDeploy.getIp());
-			sb.append("服务器:").append(serverDeploy.getName()).append("<br>应用:").append(app.getName());
-			boolean result = checkIsRunningStatus(app.getPort(), executeShellUtil);
-			if (result) {
-				sb.append("<br>正在运行");
-				sendMsg(sb.toString(), MsgType.INFO);
-			} else {
-				sb.append("<br>已停止!");
-				sendMsg(sb.toString(), MsgType.ERROR);
+			try {
+				sb.append("服务器:").append(serverDeploy.getName()).append("<br>应用:").append(app.getName());
+				boolean result = checkIsRunningStatus(app.getPort(), executeShellUtil);
+				if (result) {
+					sb.append("<br>正在运行");
+					sendMsg(sb.toString(), MsgType.INFO);
+				} else {
+					sb.append("<br>已停止!");
+					sendMsg(sb.toString(), MsgType.ERROR);
+				}
+				log.info(sb.toString());
+				return true;
+			} finally {
+				executeShellUtil.close();
 			}
-			log.info(sb.toString());
-			executeShellUtil.close();
-		}
+		});
 		return "执行完毕";
 	}
 
@@ -275,33 +305,25 @@ public class DeployServiceImpl implements DeployService {
 	 */
 	@Override
 	public String startServer(Deploy resources) {
-		Set<ServerDeploy> deploys = resources.getDeploys();
 		App app = resources.getApp();
-		for (ServerDeploy deploy : deploys) {
+		deployOrchestrator.rolling("启动", new ArrayList<>(resources.getDeploys()), ServerDeploy::getName, deploy -> {
 			StringBuilder sb = new StringBuilder();
 			ExecuteShellUtil executeShellUtil = getExecuteShellUtil(deploy.getIp());
-			//为了防止重复启动，这里先停止应用
-			stopApp(app.getPort(), executeShellUtil);
-			sb.append("服务器:").append(deploy.getName()).append("<br>应用:").append(app.getName());
-			sendMsg("下发启动命令", MsgType.INFO);
-			executeShellUtil.execute(app.getStartScript());
-			sleep(3);
-			sendMsg("应用启动中，请耐心等待启动结果，或者稍后手动查看运行状态", MsgType.INFO);
-			int i  = 0;
-			boolean result = false;
-			// 由于启动应用需要时间，所以需要循环获取状态，如果超过30次，则认为是启动失败
-			while (i++ < count){
-				result = checkIsRunningStatus(app.getPort(), executeShellUtil);
-				if(result){
-					break;
-				}
-				// 休眠6秒
-				sleep(6);
+			try {
+				//为了防止重复启动，这里先停止应用
+				stopApp(app.getPort(), executeShellUtil);
+				sb.append("服务器:").append(deploy.getName()).append("<br>应用:").append(app.getName());
+				sendMsg(deploy.getIp() + "：下发启动命令", MsgType.INFO);
+				executeShellUtil.execute(app.getStartScript());
+				sendMsg(deploy.getIp() + "：应用启动中，请耐心等待启动结果，或者稍后手动查看运行状态", MsgType.INFO);
+				boolean result = waitForStatus(app.getPort(), executeShellUtil, true, properties.getStartTimeout());
+				sendResultMsg(result, sb);
+				log.info(sb.toString());
+				return result;
+			} finally {
+				executeShellUtil.close();
 			}
-			sendResultMsg(result, sb);
-			log.info(sb.toString());
-			executeShellUtil.close();
-		}
+		});
 		return "执行完毕";
 	}
 
@@ -312,27 +334,29 @@ public class DeployServiceImpl implements DeployService {
 	 */
 	@Override
 	public String stopServer(Deploy resources) {
-		Set<ServerDeploy> deploys = resources.getDeploys();
 		App app = resources.getApp();
-		for (ServerDeploy deploy : deploys) {
+		deployOrchestrator.parallel("停止", new ArrayList<>(resources.getDeploys()), ServerDeploy::getName, deploy -> {
 			StringBuilder sb = new StringBuilder();
 			ExecuteShellUtil executeShellUtil = getExecuteShellUtil(deploy.getIp());
-			sb.append("服务器:").append(deploy.getName()).append("<br>应用:").append(app.getName());
-			sendMsg("下发停止命令", MsgType.INFO);
-			//停止应用
-			stopApp(app.getPort(), executeShellUtil);
-			sleep(1);
-			boolean result = checkIsRunningStatus(app.getPort(), executeShellUtil);
-			if (result) {
-				sb.append("<br>关闭失败!");
-				sendMsg(sb.toString(), MsgType.ERROR);
-			} else {
-				sb.append("<br>关闭成功!");
-				sendMsg(sb.toString(), MsgType.INFO);
+			try {
+				sb.append("服务器:").append(deploy.getName()).append("<br>应用:").append(app.getName());
+				sendMsg(deploy.getIp() + "：下发停止命令", MsgType.INFO);
+				//停止应用
+				stopApp(app.getPort(), executeShellUtil);
+				boolean stopped = waitForStatus(app.getPort(), executeShellUtil, false, properties.getStopTimeout());
+				if (!stopped) {
+					sb.append("<br>关闭失败!");
+					sendMsg(sb.toString(), MsgType.ERROR);
+				} else {
+					sb.append("<br>关闭成功!");
+					sendMsg(sb.toString(), MsgType.INFO);
+				}
+				log.info(sb.toString());
+				return stopped;
+			} finally {
+				executeShellUtil.close();
 			}
-			log.info(sb.toString());
-			executeShellUtil.close();
-		}
+		});
 		return "执行完毕";
 	}
 
@@ -352,38 +376,32 @@ public class DeployServiceImpl implements DeployService {
 		String deployPath = app.getDeployPath();
 		String ip = resources.getIp();
 		ExecuteShellUtil executeShellUtil = getExecuteShellUtil(ip);
-		String msg;
-
-		msg = String.format("登陆到服务器:%s", ip);
-		log.info(msg);
-		sendMsg(msg, MsgType.INFO);
-		sendMsg("停止原来应用", MsgType.INFO);
-		//停止应用
-		stopApp(app.getPort(), executeShellUtil);
-		//删除原来应用
-		sendMsg("删除应用", MsgType.INFO);
-		executeShellUtil.execute("rm -rf " + deployPath + FILE_SEPARATOR + resources.getAppName());
-		//还原应用
-		sendMsg("还原应用", MsgType.INFO);
-		executeShellUtil.execute("cp -r " + backupPath + "/. " + deployPath);
-		sendMsg("启动应用", MsgType.INFO);
-		executeShellUtil.execute(app.getStartScript());
-		sendMsg("应用启动中，请耐心等待启动结果，或者稍后手动查看启动状态", MsgType.INFO);
-		int i  = 0;
-		boolean result = false;
-		// 由于启动应用需要时间，所以需要循环获取状态，如果超过30次，则认为是启动失败
-		while (i++ < count){
-			result = checkIsRunningStatus(app.getPort(), executeShellUtil);
-			if(result){
-				break;
-			}
-			// 休眠6秒
-			sleep(6);
+		try {
+			String msg;
+			msg = String.format("登陆到服务器:%s", ip);
+			log.info(msg);
+			sendMsg(msg, MsgType.INFO);
+			sendMsg("停止原来应用", MsgType.INFO);
+			//停止应用
+			stopApp(app.getPort(), executeShellUtil);
+			//删除原来应用
+			sendMsg("删除应用", MsgType.INFO);
+			executeShellUtil.execute("rm -rf " + deployPath + FILE_SEPARATOR + resources.getAppName());
+			//还原应用
+			sendMsg("还原应用", MsgType.INFO);
+			executeShellUtil.execute("cp -r " + backupPath + "/. " + deployPath);
+			sendMsg("启动应用", MsgType.INFO);
+			executeShellUtil.execute(app.getStartScript());
+			sendMsg("应用启动中，请耐心等待启动结果，或者稍后手动查看启动状态", MsgType.INFO);
+			// 由于启动应用需要时间，按指数退避轮询状态，超时则认为是启动失败
+			boolean result = waitForStatus(app.getPort(), executeShellUtil, true, properties.getStartTimeout());
+			StringBuilder sb = new StringBuilder();
+			sb.append("服务器:").append(ip).append("<br>应用:").append(resources.getAppName());
+			sendResultMsg(result, sb);
+		} finally {
+			// 归还连接池中的会话，异常时也必须执行
+			executeShellUtil.close();
 		}
-		StringBuilder sb = new StringBuilder();
-		sb.append("服务器:").append(ip).append("<br>应用:").append(resources.getAppName());
-		sendResultMsg(result, sb);
-		executeShellUtil.close();
 		return "";
 	}
 
@@ -396,15 +414,6 @@ public class DeployServiceImpl implements DeployService {
 		return new ExecuteShellUtil(ip, serverDeployDTO.getAccount(), serverDeployDTO.getPassword(),serverDeployDTO.getPort());
 	}
 
-	private ScpClientUtil getScpClientUtil(String ip) {
-		ServerDeployDto serverDeployDTO = serverDeployService.findByIp(ip);
-		if (serverDeployDTO == null) {
-			sendMsg("IP对应服务器信息不存在：" + ip, MsgType.ERROR);
-			throw new BadRequestException("IP对应服务器信息不存在：" + ip);
-		}
-		return ScpClientUtil.getInstance(ip, serverDeployDTO.getPort(), serverDeployDTO.getAccount(), serverDeployDTO.getPassword());
-	}
-
 	private void sendResultMsg(boolean result, StringBuilder sb) {
 		if (result) {
 			sb.append("<br>启动成功!");
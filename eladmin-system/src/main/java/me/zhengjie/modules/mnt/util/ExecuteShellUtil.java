@@ -15,89 +15,125 @@
  */
 package me.zhengjie.modules.mnt.util;
 
-import cn.hutool.core.io.IoUtil;
-import com.jcraft.jsch.ChannelShell;
-import com.jcraft.jsch.JSch;
-import com.jcraft.jsch.Session;
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSchException;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
-import java.util.Vector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
- * 执行shell命令
+ * 执行shell命令，会话从 {@link SshSessionPool} 中借出，close 时归还
  *
  * @author: ZhangHouYing
  * @date: 2019/8/10
  */
 @Slf4j
 public class ExecuteShellUtil {
+	/**
+	 * exec 通道不会加载登录环境，先加载 profile 并把错误输出合并到标准输出
+	 */
+	private static final String ENV_PREFIX = "exec 2>&1; [ -f /etc/profile ] && . /etc/profile >/dev/null 2>&1; "
+			+ "[ -f ~/.bash_profile ] && . ~/.bash_profile >/dev/null 2>&1; ";
+
+	/**
+	 * 输出读取完毕后等待通道关闭以取得退出码的最长时间
+	 */
+	private static final long EXIT_STATUS_TIMEOUT = 3000;
+
 	// 标准输出
-	private Vector<String> stdout;
+	private List<String> stdout = new ArrayList<>();
 
 	// JSch https://blog.csdn.net/u010022051/article/details/52724660
 	// JSch是Java Secure Channel的缩写。JSch是一个SSH2的纯Java实现。它允许你连接到一个SSH服务器，并且可以使用端口转发，X11转发，文件传输等，
-	Session session;
+	private SshSessionPool.PooledSession pooled;
+
+	private boolean broken;
 
 	public ExecuteShellUtil(final String ipAddress, final String username, final String password,int port) {
 		try {
-			// 创建连接SSH服务器的对象
-			JSch jsch = new JSch();
-			// 设置 用户名、ip、端口号、密码、配置
-			session = jsch.getSession(username, ipAddress, port);
-			session.setPassword(password);
-			// StrictHostKeyChecking https://blog.csdn.net/LTCM_SAKURA/article/details/108238752
-			// 内网中常忽略安全检查，故no
-			session.setConfig("StrictHostKeyChecking", "no");
-			session.connect(3000);
+			pooled = SshSessionPool.borrow(ipAddress, port, username, password);
 		} catch (Exception e) {
 			log.error(e.getMessage(),e);
 		}
-
 	}
 
 	public int execute(final String command) {
-		int returnCode = 0;
-		// 三种常用的shell的自动交互方法 https://www.cnblogs.com/evi10032/p/5455990.html
-		// shell支持管道交互模式,故可使用jsch中ChannelShell，使用BufferedReader的readLine()读取执行结果
-		ChannelShell channel = null;
-		PrintWriter printWriter = null;
-		BufferedReader input = null;
-		stdout = new Vector<String>();
+		return execute(command, null);
+	}
+
+	/**
+	 * 通过 exec 通道执行命令
+	 * @param command 命令
+	 * @param consumer 逐行接收输出，可为 null
+	 * @return 命令退出码，执行失败返回 -1
+	 */
+	public int execute(final String command, Consumer<String> consumer) {
+		stdout = new ArrayList<>();
+		if (pooled == null) {
+			return -1;
+		}
+		// ChannelShell(ing交互)与ChannelExec(脚本交互)区别 https://blog.csdn.net/u013066244/article/details/70911585
+		ChannelExec channel = null;
 		try {
-			// ChannelShell(ing交互)与ChannelExec(脚本交互)区别 https://blog.csdn.net/u013066244/article/details/70911585
-			// 选择channel交互的方式
-			channel = (ChannelShell) session.openChannel("shell");
-			channel.connect();
-			// 将程序端与远程shell端的输入输出端互相对接，再通过完成对接的入口输入命令，完成shell命令交互
-			// IO概念：输入是将读取输入设备的信息到内存、输出是输入的数据写入到输出的设备上
-			input = new BufferedReader(new InputStreamReader(channel.getInputStream()));
-			printWriter = new PrintWriter(channel.getOutputStream());
-			printWriter.println(command);
-			printWriter.println("exit");
-			printWriter.flush();
-			log.info("The remote command is: ");
-			String line;
-			while ((line = input.readLine()) != null) {
-				stdout.add(line);
-				System.out.println(line);
+			channel = (ChannelExec) pooled.getSession().openChannel("exec");
+			channel.setCommand(ENV_PREFIX + command);
+			channel.setInputStream(null);
+			// 分配伪终端，命令结束后后台进程不会占住输出流，与原先的 shell 通道行为一致
+			channel.setPty(true);
+			InputStream in = channel.getInputStream();
+			channel.connect(3000);
+			log.info("The remote command is: {}", command);
+			try (BufferedReader input = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = input.readLine()) != null) {
+					stdout.add(line);
+					if (consumer != null) {
+						consumer.accept(line);
+					}
+				}
 			}
+			long deadline = System.currentTimeMillis() + EXIT_STATUS_TIMEOUT;
+			while (!channel.isClosed() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			return channel.getExitStatus();
+		} catch (JSchException e) {
+			// 会话已不可用，归还时直接断开
+			broken = true;
+			log.error(e.getMessage(),e);
+			return -1;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return -1;
 		} catch (Exception e) {
 			log.error(e.getMessage(),e);
 			return -1;
-		}finally {
-			IoUtil.close(printWriter);
-			IoUtil.close(input);
+		} finally {
 			if (channel != null) {
 				channel.disconnect();
 			}
 		}
-		return returnCode;
+	}
+
+	/**
+	 * 获取与当前命令共用同一个会话的文件传输工具，无需再次握手认证
+	 */
+	public ScpClientUtil getScpClient() {
+		return new ScpClientUtil(pooled);
 	}
 
 	public void close(){
-		if (session != null) {
-			session.disconnect();
+		if (pooled != null) {
+			if (broken) {
+				pooled.invalidate();
+			} else {
+				pooled.release();
+			}
+			pooled = null;
 		}
 	}
 
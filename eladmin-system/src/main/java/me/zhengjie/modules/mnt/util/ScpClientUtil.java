@@ -15,30 +15,28 @@
  */
 package me.zhengjie.modules.mnt.util;
 
-import ch.ethz.ssh2.Connection;
-import ch.ethz.ssh2.SCPClient;
 import com.google.common.collect.Maps;
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.SftpException;
+import lombok.extern.slf4j.Slf4j;
 
-import java.io.IOException;
+import java.io.File;
 import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
- * 单例模式
- * 远程执行linux命令：使用ch.ethz.ssh2.Connection依赖来连接到远程服务器，逻辑类似jdbc底层代码
+ * 远程文件传输：基于 JSch 的 sftp 通道，会话从 {@link SshSessionPool} 中借出，
+ * 通过 {@link ExecuteShellUtil#getScpClient()} 获取时与命令执行共用同一个会话
  * @author: ZhangHouYing
  * @date: 2019-08-10 10:06
  */
+@Slf4j
 public class ScpClientUtil {
 
 	static private Map<String,ScpClientUtil> instance = Maps.newHashMap();
 
 	static synchronized public ScpClientUtil getInstance(String ip, int port, String username, String password) {
-		if (instance.get(ip) == null) {
-			instance.put(ip, new ScpClientUtil(ip, port, username, password));
-		}
-		return instance.get(ip);
+		return instance.computeIfAbsent(username + "@" + ip + ":" + port, k -> new ScpClientUtil(ip, port, username, password));
 	}
 
 	public ScpClientUtil(String ip, int port, String username, String password) {
@@ -46,26 +44,15 @@ public class ScpClientUtil {
 		this.port = port;
 		this.username = username;
 		this.password = password;
+		this.shared = null;
+	}
+
+	ScpClientUtil(SshSessionPool.PooledSession shared) {
+		this.shared = shared;
 	}
 
 	public void getFile(String remoteFile, String localTargetDirectory) {
-		Connection conn = new Connection(ip, port);
-		try {
-			// 讲本地与远程服务器进行连接上
-			conn.connect();
-			// 验证账号密码
-			boolean isAuthenticated = conn.authenticateWithPassword(username, password);
-			if (!isAuthenticated) {
-				System.err.println("authentication failed");
-			}
-			// 通过服务器的连接获取客户端操作的对象
-			SCPClient client = new SCPClient(conn);
-			client.get(remoteFile, localTargetDirectory);
-		} catch (IOException ex) {
-			Logger.getLogger(SCPClient.class.getName()).log(Level.SEVERE, null, ex);
-		}finally{
-			conn.close();
-		}
+		transfer(sftp -> sftp.get(remoteFile, localTargetDirectory));
 	}
 	// 如下重载putFile方法
 	public void putFile(String localFile, String remoteTargetDirectory) {
@@ -77,33 +64,54 @@ public class ScpClientUtil {
 	}
 
 	public void putFile(String localFile, String remoteFileName, String remoteTargetDirectory, String mode) {
-		Connection conn = new Connection(ip, port);
+		String fileMode = (mode == null) || (mode.length() == 0) ? "0600" : mode;
+		String target = remoteTargetDirectory + "/" + (remoteFileName == null ? new File(localFile).getName() : remoteFileName);
+		transfer(sftp -> {
+			sftp.put(localFile, target);
+			sftp.chmod(Integer.parseInt(fileMode, 8), target);
+		});
+	}
+
+	private void transfer(SftpAction action) {
+		SshSessionPool.PooledSession session = shared;
+		boolean broken = false;
+		ChannelSftp channel = null;
 		try {
-			conn.connect();
-			boolean isAuthenticated = conn.authenticateWithPassword(username, password);
-			if (!isAuthenticated) {
-				System.err.println("authentication failed");
+			if (session == null) {
+				session = SshSessionPool.borrow(ip, port, username, password);
 			}
-			SCPClient client = new SCPClient(conn);
-			if ((mode == null) || (mode.length() == 0)) {
-				mode = "0600";
+			channel = (ChannelSftp) session.getSession().openChannel("sftp");
+			channel.connect(3000);
+			action.run(channel);
+		} catch (JSchException e) {
+			broken = true;
+			log.error(e.getMessage(), e);
+		} catch (SftpException e) {
+			log.error(e.getMessage(), e);
+		} finally {
+			if (channel != null) {
+				channel.disconnect();
 			}
-			if (remoteFileName == null) {
-				client.put(localFile, remoteTargetDirectory);
-			} else {
-				client.put(localFile, remoteFileName, remoteTargetDirectory, mode);
+			// 共用的会话由 ExecuteShellUtil 负责归还
+			if (shared == null && session != null) {
+				if (broken) {
+					session.invalidate();
+				} else {
+					session.release();
+				}
 			}
-		} catch (IOException ex) {
-			Logger.getLogger(ScpClientUtil.class.getName()).log(Level.SEVERE, null, ex);
-		}finally{
-			conn.close();
 		}
 	}
 
+	@FunctionalInterface
+	private interface SftpAction {
+		void run(ChannelSftp sftp) throws SftpException;
+	}
+
 	private String ip;
 	private int port;
 	private String username;
 	private String password;
-
+	private final SshSessionPool.PooledSession shared;
 
 }
@@ -0,0 +1,207 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.modules.mnt.util;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSH 会话池：按 用户@主机:端口 复用已认证的 JSch 会话，exec 与 sftp 通道共用同一个会话。
+ * 每个主机最多同时借出 {@link #MAX_SESSIONS_PER_HOST} 个会话，空闲超时的会话由后台线程断开
+ *
+ * @author /
+ */
+@Slf4j
+public class SshSessionPool {
+
+	/**
+	 * 单个主机同时使用的会话上限，sshd 默认 MaxSessions 为 10
+	 */
+	static final int MAX_SESSIONS_PER_HOST = 4;
+
+	/**
+	 * 会话空闲超过该时间后断开
+	 */
+	private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+	/**
+	 * 会话空闲超过该时间后，借出前先发送心跳确认连接可用
+	 */
+	private static final long VALIDATE_AFTER = TimeUnit.SECONDS.toMillis(30);
+
+	/**
+	 * 等待可用会话的最长时间
+	 */
+	private static final long BORROW_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+	private static final int CONNECT_TIMEOUT = 3000;
+
+	private static final Map<String, HostPool> POOLS = new ConcurrentHashMap<>();
+
+	private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "el-ssh-evictor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	static {
+		EVICTOR.scheduleWithFixedDelay(SshSessionPool::evictIdle, 1, 1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * 借出会话，使用完毕后必须调用 {@link PooledSession#release()} 或 {@link PooledSession#invalidate()}
+	 */
+	public static PooledSession borrow(String ip, int port, String username, String password) throws JSchException {
+		// 会话数量按 用户@主机:端口 限制，密码只用于校验空闲会话是否仍可复用
+		HostPool pool = POOLS.computeIfAbsent(username + "@" + ip + ":" + port, k -> new HostPool());
+		String credential = DigestUtils.sha256Hex(String.valueOf(password));
+		try {
+			if (!pool.permits.tryAcquire(BORROW_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				throw new JSchException("等待 SSH 连接超时：" + ip);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JSchException("等待 SSH 连接被中断：" + ip, e);
+		}
+		try {
+			PooledSession pooled;
+			while ((pooled = pool.idle.pollFirst()) != null) {
+				// 密码已变更时，用旧密码认证的会话直接断开
+				if (credential.equals(pooled.credential) && isHealthy(pooled)) {
+					return pooled;
+				}
+				pooled.disconnect();
+			}
+			return new PooledSession(pool, connect(ip, port, username, password), credential);
+		} catch (JSchException | RuntimeException e) {
+			pool.permits.release();
+			throw e;
+		}
+	}
+
+	private static Session connect(String ip, int port, String username, String password) throws JSchException {
+		Session session = new JSch().getSession(username, ip, port);
+		session.setPassword(password);
+		// 内网中常忽略安全检查，故no
+		session.setConfig("StrictHostKeyChecking", "no");
+		session.setServerAliveInterval(30000);
+		session.connect(CONNECT_TIMEOUT);
+		return session;
+	}
+
+	private static boolean isHealthy(PooledSession pooled) {
+		if (!pooled.session.isConnected()) {
+			return false;
+		}
+		if (System.currentTimeMillis() - pooled.lastUsed < VALIDATE_AFTER) {
+			return true;
+		}
+		try {
+			pooled.session.sendKeepAliveMsg();
+			return true;
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	private static void evictIdle() {
+		long deadline = System.currentTimeMillis() - IDLE_TIMEOUT;
+		for (HostPool pool : POOLS.values()) {
+			Iterator<PooledSession> iterator = pool.idle.descendingIterator();
+			while (iterator.hasNext()) {
+				PooledSession pooled = iterator.next();
+				// 与借出并发时只有成功移除的一方负责断开
+				if ((pooled.lastUsed < deadline || !pooled.session.isConnected()) && pool.idle.remove(pooled)) {
+					pooled.disconnect();
+				}
+			}
+		}
+	}
+
+	private static class HostPool {
+		private final Semaphore permits = new Semaphore(MAX_SESSIONS_PER_HOST);
+		private final Deque<PooledSession> idle = new ConcurrentLinkedDeque<>();
+	}
+
+	/**
+	 * 借出的会话
+	 */
+	public static class PooledSession {
+		private final HostPool pool;
+		private final Session session;
+		private final String credential;
+		private final long lastUsed = System.currentTimeMillis();
+		private boolean returned;
+
+		private PooledSession(HostPool pool, Session session, String credential) {
+			this.pool = pool;
+			this.session = session;
+			this.credential = credential;
+		}
+
+		public Session getSession() {
+			return session;
+		}
+
+		/**
+		 * 归还会话，连接已断开时直接丢弃
+		 */
+		public synchronized void release() {
+			if (returned) {
+				return;
+			}
+			returned = true;
+			if (session.isConnected()) {
+				// 以新的包装归还，避免旧引用重复归还；后进先出，优先复用最近使用过的会话
+				pool.idle.offerFirst(new PooledSession(pool, session, credential));
+			}
+			pool.permits.release();
+		}
+
+		/**
+		 * 会话出现异常时调用，断开连接并不再复用
+		 */
+		public synchronized void invalidate() {
+			if (returned) {
+				return;
+			}
+			returned = true;
+			disconnect();
+			pool.permits.release();
+		}
+
+		private void disconnect() {
+			try {
+				session.disconnect();
+			} catch (Exception e) {
+				log.warn("Close ssh session failed: {}", e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,239 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.modules.mnt.websocket;
+
+import cn.hutool.core.util.IdUtil;
+import com.alibaba.fastjson.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+import me.zhengjie.utils.RedisUtils;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.websocket.CloseReason;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * WebSocket 消息中心：按 sid 索引连接，每个连接有独立的有界发送队列，通过异步发送逐条推送，
+ * 调用方只负责入队，不会被慢速的浏览器阻塞；积压时将同类型的连续消息合并为一条，
+ * 队列已满或发送超时的连接会被断开。消息同时通过 Redis 广播，连接在其他节点的浏览器也能收到
+ * @author /
+ */
+@Slf4j
+@Component
+public class WebSocketHub implements MessageListener {
+
+	/**
+	 * 跨节点广播频道
+	 */
+	public static final String BROADCAST_CHANNEL = "websocket-broadcast";
+
+	/**
+	 * 单个连接待发送消息数量上限，超出时断开该连接
+	 */
+	private static final int QUEUE_CAPACITY = 256;
+
+	/**
+	 * 单条消息发送超时时间，单位毫秒
+	 */
+	private static final long SEND_TIMEOUT = 10000;
+
+	/**
+	 * 单次最多合并的消息数量
+	 */
+	private static final int MAX_COALESCE = 20;
+
+	/**
+	 * 当前节点标识，忽略自己发出的广播
+	 */
+	private final String node = IdUtil.simpleUUID();
+	private final Map<String, Set<Outbound>> sessions = new ConcurrentHashMap<>();
+	private final RedisUtils redisUtils;
+	private final RedisMessageListenerContainer listenerContainer;
+
+	public WebSocketHub(RedisUtils redisUtils, RedisMessageListenerContainer listenerContainer) {
+		this.redisUtils = redisUtils;
+		this.listenerContainer = listenerContainer;
+	}
+
+	@PostConstruct
+	public void subscribe() {
+		listenerContainer.addMessageListener(this, new ChannelTopic(BROADCAST_CHANNEL));
+	}
+
+	public void register(String sid, Session session) {
+		session.getAsyncRemote().setSendTimeout(SEND_TIMEOUT);
+		sessions.compute(sid, (k, outbounds) -> {
+			Set<Outbound> result = outbounds == null ? ConcurrentHashMap.newKeySet() : outbounds;
+			result.add(new Outbound(sid, session));
+			return result;
+		});
+	}
+
+	public void unregister(String sid, Session session) {
+		sessions.computeIfPresent(sid, (k, outbounds) -> {
+			outbounds.removeIf(outbound -> outbound.session == session);
+			return outbounds.isEmpty() ? null : outbounds;
+		});
+	}
+
+	/**
+	 * 推送消息到所有节点上的指定 sid
+	 * @param socketMsg 消息
+	 * @param sid 为 null 时推送给全部连接
+	 */
+	public void send(SocketMsg socketMsg, String sid) {
+		sendLocal(socketMsg, sid);
+		Map<String, Object> payload = new HashMap<>(8);
+		payload.put("node", node);
+		payload.put("sid", sid);
+		payload.put("msg", socketMsg.getMsg());
+		payload.put("msgType", socketMsg.getMsgType().name());
+		redisUtils.convertAndSend(BROADCAST_CHANNEL, payload);
+	}
+
+	/**
+	 * 推送消息到当前节点上的连接
+	 * @param message {@link SocketMsg} 或原始文本
+	 * @param sid 为 null 时推送给全部连接
+	 */
+	void sendLocal(Object message, String sid) {
+		if (sid == null) {
+			sessions.values().forEach(outbounds -> outbounds.forEach(outbound -> outbound.enqueue(message)));
+		} else {
+			Set<Outbound> outbounds = sessions.get(sid);
+			if (outbounds != null) {
+				outbounds.forEach(outbound -> outbound.enqueue(message));
+			}
+		}
+	}
+
+	@Override
+	public void onMessage(Message message, byte[] pattern) {
+		Object body = redisUtils.deserializeMessage(message.getBody());
+		if (!(body instanceof Map)) {
+			return;
+		}
+		Map<?, ?> payload = (Map<?, ?>) body;
+		if (node.equals(payload.get("node"))) {
+			return;
+		}
+		Object sid = payload.get("sid");
+		SocketMsg socketMsg = new SocketMsg((String) payload.get("msg"), MsgType.valueOf((String) payload.get("msgType")));
+		sendLocal(socketMsg, sid == null ? null : sid.toString());
+	}
+
+	private void evict(Outbound outbound, String reason) {
+		unregister(outbound.sid, outbound.session);
+		log.warn("WebSocket 连接 {} 已断开：{}", outbound.sid, reason);
+		try {
+			outbound.session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, reason));
+		} catch (Exception ignored) {
+		}
+	}
+
+	/**
+	 * 单个连接的发送队列，同一时刻只有一条消息在发送
+	 */
+	private class Outbound implements SendHandler {
+		private final String sid;
+		private final Session session;
+		private final Deque<Object> pending = new ArrayDeque<>();
+		private boolean sending;
+
+		Outbound(String sid, Session session) {
+			this.sid = sid;
+			this.session = session;
+		}
+
+		void enqueue(Object message) {
+			String text;
+			synchronized (this) {
+				if (pending.size() >= QUEUE_CAPACITY) {
+					text = null;
+				} else {
+					pending.add(message);
+					if (sending) {
+						return;
+					}
+					sending = true;
+					text = take();
+				}
+			}
+			if (text == null) {
+				evict(this, "消息积压");
+			} else {
+				send(text);
+			}
+		}
+
+		@Override
+		public void onResult(SendResult result) {
+			if (!result.isOK()) {
+				evict(this, "发送超时或失败");
+				return;
+			}
+			String text;
+			synchronized (this) {
+				text = take();
+				if (text == null) {
+					sending = false;
+				}
+			}
+			if (text != null) {
+				send(text);
+			}
+		}
+
+		private void send(String text) {
+			try {
+				session.getAsyncRemote().sendText(text, this);
+			} catch (Exception e) {
+				evict(this, e.getMessage());
+			}
+		}
+
+		/**
+		 * 取出下一条待发送的消息，连续的同类型 SocketMsg 合并为一条
+		 */
+		private String take() {
+			Object first = pending.poll();
+			if (first == null) {
+				return null;
+			}
+			if (!(first instanceof SocketMsg)) {
+				return first.toString();
+			}
+			SocketMsg socketMsg = (SocketMsg) first;
+			StringBuilder msg = null;
+			for (int i = 1; i < MAX_COALESCE && pending.peek() instanceof SocketMsg
+					&& ((SocketMsg) pending.peek()).getMsgType() == socketMsg.getMsgType(); i++) {
+				if (msg == null) {
+					msg = new StringBuilder(socketMsg.getMsg());
+				}
+				msg.append("<br>").append(((SocketMsg) pending.poll()).getMsg());
+			}
+			return JSONObject.toJSONString(msg == null ? socketMsg : new SocketMsg(msg.toString(), socketMsg.getMsgType()));
+		}
+	}
+}
@@ -15,16 +15,13 @@
  */
 package me.zhengjie.modules.mnt.websocket;
 
-import com.alibaba.fastjson.JSONObject;
 import lombok.extern.slf4j.Slf4j;
+import me.zhengjie.utils.SpringContextHolder;
 import org.springframework.stereotype.Component;
 
 import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.io.IOException;
-import java.util.Objects;
-import java.util.concurrent.CopyOnWriteArraySet;
 /**
  *
  * 2、在接收连接的类加上@ServerEndpoint和@Component
@@ -38,11 +35,6 @@ import java.util.concurrent.CopyOnWriteArraySet;
 @Component
 public class WebSocketServer {
 
-	/**
-	 * concurrent包的线程安全Set，用来存放每个客户端对应的MyWebSocket对象。
-	 */
-	private static CopyOnWriteArraySet<WebSocketServer> webSocketSet = new CopyOnWriteArraySet<WebSocketServer>();
-
 	/**
 	 * 与某个客户端的连接会话，需要通过它来给客户端发送数据
 	 */
@@ -58,14 +50,9 @@ public class WebSocketServer {
 	@OnOpen
 	public void onOpen(Session session,@PathParam("sid") String sid) {
 		this.session = session;
-		//如果存在就先删除一个，防止重复推送消息
-		for (WebSocketServer webSocket:webSocketSet) {
-			if (webSocket.sid.equals(sid)) {
-				webSocketSet.remove(webSocket);
-			}
-		}
-		webSocketSet.add(this);
 		this.sid=sid;
+		// 连接按 sid 登记到消息中心，同一个连接只会登记一次
+		getHub().register(sid, session);
 	}
 
 	/**
@@ -73,7 +60,7 @@ public class WebSocketServer {
 	 */
 	@OnClose
 	public void onClose() {
-		webSocketSet.remove(this);
+		getHub().unregister(sid, session);
 	}
 
 	/**
@@ -83,61 +70,27 @@ public class WebSocketServer {
 	public void onMessage(String message, Session session) {
 		log.info("收到来"+sid+"的信息:"+message);
 		//群发消息
-		for (WebSocketServer item : webSocketSet) {
-			try {
-				item.sendMessage(message);
-			} catch (IOException e) {
-				log.error(e.getMessage(),e);
-			}
-		}
+		getHub().sendLocal(message, null);
 	}
 
 	@OnError
 	public void onError(Session session, Throwable error) {
-		log.error("发生错误");
-		error.printStackTrace();
-	}
-	/**
-	 * 实现服务器主动推送信息
-	 */
-	private void sendMessage(String message) throws IOException {
-		this.session.getBasicRemote().sendText(message);
+		log.error("发生错误", error);
 	}
 
-
 	/**
-	 * (客户端)群发(或指定发)自定义消息
+	 * (客户端)群发(或指定发)自定义消息，只负责入队，不等待发送完成
 	 * */
-	public static void sendInfo(SocketMsg socketMsg,@PathParam("sid") String sid) throws IOException {
-		String message = JSONObject.toJSONString(socketMsg);
-		log.info("推送消息到"+sid+"，推送内容:"+message);
-		for (WebSocketServer item : webSocketSet) {
-			try {
-				//这里可以设定只推送给这个sid的，为null则全部推送
-				if(sid==null) {
-					item.sendMessage(message);
-				}else if(item.sid.equals(sid)){
-					item.sendMessage(message);
-				}
-			} catch (IOException ignored) { }
-		}
-	}
-
-	@Override
-	public boolean equals(Object o) {
-		if (this == o) {
-			return true;
-		}
-		if (o == null || getClass() != o.getClass()) {
-			return false;
-		}
-		WebSocketServer that = (WebSocketServer) o;
-		return Objects.equals(session, that.session) &&
-				Objects.equals(sid, that.sid);
+	public static void sendInfo(SocketMsg socketMsg,@PathParam("sid") String sid) {
+		log.info("推送消息到"+sid+"，推送内容:"+socketMsg.getMsg());
+		//这里可以设定只推送给这个sid的，为null则全部推送
+		getHub().send(socketMsg, sid);
 	}
 
-	@Override
-	public int hashCode() {
-		return Objects.hash(session, sid);
+	/**
+	 * 端点实例由容器为每个连接创建，不经过 Spring 注入，从容器中获取消息中心
+	 */
+	private static WebSocketHub getHub() {
+		return SpringContextHolder.getBean(WebSocketHub.class);
 	}
 }
@@ -18,9 +18,11 @@ package me.zhengjie.modules.quartz.config;
 import lombok.RequiredArgsConstructor;
 import me.zhengjie.modules.quartz.domain.QuartzJob;
 import me.zhengjie.modules.quartz.repository.QuartzJobRepository;
+import me.zhengjie.modules.quartz.utils.JobInvokerRegistry;
 import me.zhengjie.modules.quartz.utils.QuartzManage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.stereotype.Component;
@@ -50,7 +52,17 @@ public class JobRunner implements ApplicationRunner {
     public void run(ApplicationArguments applicationArguments) {
         log.info("--------------------注入定时任务---------------------");
         List<QuartzJob> quartzJobs = quartzJobRepository.findByIsPauseIsFalse();
-        quartzJobs.forEach(quartzManage::addJob);
+        for (QuartzJob quartzJob : quartzJobs) {
+            // 启动时解析调用句柄，Bean 或方法不存在的任务不注入，避免到首次触发时才失败
+            try {
+                JobInvokerRegistry.validate(quartzJob);
+            } catch (NoSuchMethodException | BeansException e) {
+                log.error("定时任务【{}】执行方法不存在：{}.{}，已跳过", quartzJob.getJobName(),
+                        quartzJob.getBeanName(), quartzJob.getMethodName());
+                continue;
+            }
+            quartzManage.addJob(quartzJob);
+        }
         log.info("--------------------定时任务注入完成---------------------");
     }
 }
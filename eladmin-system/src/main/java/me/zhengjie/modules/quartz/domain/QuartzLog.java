@@ -56,9 +56,14 @@ public class QuartzLog implements Serializable {
     @ApiModelProperty(value = "状态", hidden = true)
     private Boolean isSuccess;
 
+    /** 查询时按指纹填充，不随实体更新写回 */
+    @Column(updatable = false)
     @ApiModelProperty(value = "异常详情", hidden = true)
     private String exceptionDetail;
 
+    @ApiModelProperty(value = "异常指纹，相同的异常详情只保存一份", hidden = true)
+    private String exceptionFingerprint;
+
     @ApiModelProperty(value = "执行耗时", hidden = true)
     private Long time;
 
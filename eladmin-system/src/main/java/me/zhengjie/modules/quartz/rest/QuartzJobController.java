@@ -24,6 +24,7 @@ import me.zhengjie.exception.BadRequestException;
 import me.zhengjie.modules.quartz.domain.QuartzJob;
 import me.zhengjie.modules.quartz.service.QuartzJobService;
 import me.zhengjie.modules.quartz.service.dto.JobQueryCriteria;
+import me.zhengjie.modules.quartz.utils.JobExecutor;
 import org.springframework.data.domain.Pageable;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -47,6 +48,7 @@ public class QuartzJobController {
 
     private static final String ENTITY_NAME = "quartzJob";
     private final QuartzJobService quartzJobService;
+    private final JobExecutor jobExecutor;
 
     @ApiOperation("查询定时任务")
     @GetMapping
@@ -76,6 +78,20 @@ public class QuartzJobController {
         return new ResponseEntity<>(quartzJobService.queryAllLog(criteria,pageable), HttpStatus.OK);
     }
 
+    @ApiOperation("查询任务每日执行统计")
+    @GetMapping(value = "/logs/stats")
+    @PreAuthorize("@el.check('timing:list')")
+    public ResponseEntity<Object> queryJobLogStats(JobQueryCriteria criteria){
+        return new ResponseEntity<>(quartzJobService.queryLogStats(criteria), HttpStatus.OK);
+    }
+
+    @ApiOperation("查询任务执行线程池状态")
+    @GetMapping(value = "/executor")
+    @PreAuthorize("@el.check('timing:list')")
+    public ResponseEntity<Object> queryExecutor(){
+        return new ResponseEntity<>(jobExecutor.getStats(), HttpStatus.OK);
+    }
+
     @Log("新增定时任务")
     @ApiOperation("新增定时任务")
     @PostMapping
@@ -18,6 +18,7 @@ package me.zhengjie.modules.quartz.service;
 import me.zhengjie.modules.quartz.domain.QuartzJob;
 import me.zhengjie.modules.quartz.domain.QuartzLog;
 import me.zhengjie.modules.quartz.service.dto.JobQueryCriteria;
+import me.zhengjie.modules.quartz.service.dto.QuartzLogStatDto;
 import org.springframework.data.domain.Pageable;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
@@ -72,6 +73,13 @@ public interface QuartzJobService {
      */
     void update(QuartzJob resources);
 
+    /**
+     * 查询每日执行统计，保留期以前的日期读取汇总数据
+     * @param criteria 条件，默认最近30天
+     * @return /
+     */
+    List<QuartzLogStatDto> queryLogStats(JobQueryCriteria criteria);
+
     /**
      * 删除任务
      * @param ids /
@@ -114,9 +122,8 @@ public interface QuartzJobService {
     void downloadLog(List<QuartzLog> queryAllLog, HttpServletResponse response) throws IOException;
 
     /**
-     * 执行子任务
-     * @param tasks /
-     * @throws InterruptedException /
+     * 执行子任务，按依赖关系异步触发，不阻塞当前线程
+     * @param quartzJob 已执行成功的主任务
      */
-    void executionSubJob(String[] tasks) throws InterruptedException;
+    void executionSubJob(QuartzJob quartzJob);
 }
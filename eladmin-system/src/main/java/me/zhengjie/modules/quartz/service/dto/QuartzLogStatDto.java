@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.modules.quartz.service.dto;
+
+import lombok.Data;
+import java.io.Serializable;
+import java.sql.Date;
+
+/**
+ * 定时任务每日执行统计，超出保留期的明细日志汇总后存放在 sys_quartz_log_stat
+ * @author /
+ */
+@Data
+public class QuartzLogStatDto implements Serializable {
+
+    private String jobName;
+
+    private String beanName;
+
+    private String methodName;
+
+    /** 统计日期 */
+    private Date statDate;
+
+    /** 执行次数 */
+    private Long runCount;
+
+    /** 失败次数 */
+    private Long failureCount;
+
+    /** 耗时中位数，单位毫秒 */
+    private Long p50Time;
+
+    /** 耗时95分位，单位毫秒 */
+    private Long p95Time;
+
+    /** 最长耗时，单位毫秒 */
+    private Long maxTime;
+}
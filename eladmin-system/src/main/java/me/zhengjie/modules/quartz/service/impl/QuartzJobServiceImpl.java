@@ -15,8 +15,6 @@
  */
 package me.zhengjie.modules.quartz.service.impl;
 
-import cn.hutool.core.util.IdUtil;
-import cn.hutool.core.util.StrUtil;
 import lombok.RequiredArgsConstructor;
 import me.zhengjie.exception.BadRequestException;
 import me.zhengjie.modules.quartz.domain.QuartzJob;
@@ -25,15 +23,22 @@ import me.zhengjie.modules.quartz.repository.QuartzJobRepository;
 import me.zhengjie.modules.quartz.repository.QuartzLogRepository;
 import me.zhengjie.modules.quartz.service.QuartzJobService;
 import me.zhengjie.modules.quartz.service.dto.JobQueryCriteria;
+import me.zhengjie.modules.quartz.service.dto.QuartzLogStatDto;
+import me.zhengjie.modules.quartz.utils.JobInvokerRegistry;
+import me.zhengjie.modules.quartz.utils.QuartzLogWriter;
 import me.zhengjie.modules.quartz.utils.QuartzManage;
+import me.zhengjie.modules.quartz.utils.SubJobExecutor;
 import me.zhengjie.utils.*;
 import org.quartz.CronExpression;
+import org.springframework.beans.BeansException;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.util.*;
 
 /**
@@ -47,7 +52,8 @@ public class QuartzJobServiceImpl implements QuartzJobService {
     private final QuartzJobRepository quartzJobRepository;
     private final QuartzLogRepository quartzLogRepository;
     private final QuartzManage quartzManage;
-    private final RedisUtils redisUtils;
+    private final SubJobExecutor subJobExecutor;
+    private final QuartzLogWriter quartzLogWriter;
 
     @Override
     public Object queryAll(JobQueryCriteria criteria, Pageable pageable){
@@ -56,7 +62,9 @@ public class QuartzJobServiceImpl implements QuartzJobService {
 
     @Override
     public Object queryAllLog(JobQueryCriteria criteria, Pageable pageable){
-        return PageUtil.toPage(quartzLogRepository.findAll((root, criteriaQuery, criteriaBuilder) -> QueryHelp.getPredicate(root,criteria,criteriaBuilder),pageable));
+        Page<QuartzLog> page = quartzLogRepository.findAll((root, criteriaQuery, criteriaBuilder) -> QueryHelp.getPredicate(root,criteria,criteriaBuilder),pageable);
+        quartzLogWriter.fillExceptionDetail(page.getContent());
+        return PageUtil.toPage(page);
     }
 
     @Override
@@ -66,7 +74,21 @@ public class QuartzJobServiceImpl implements QuartzJobService {
 
     @Override
     public List<QuartzLog> queryAllLog(JobQueryCriteria criteria) {
-        return quartzLogRepository.findAll((root, criteriaQuery, criteriaBuilder) -> QueryHelp.getPredicate(root,criteria,criteriaBuilder));
+        List<QuartzLog> logs = quartzLogRepository.findAll((root, criteriaQuery, criteriaBuilder) -> QueryHelp.getPredicate(root,criteria,criteriaBuilder));
+        quartzLogWriter.fillExceptionDetail(logs);
+        return logs;
+    }
+
+    @Override
+    public List<QuartzLogStatDto> queryLogStats(JobQueryCriteria criteria) {
+        LocalDate end = LocalDate.now();
+        LocalDate start = end.minusDays(30);
+        if (criteria.getCreateTime() != null && criteria.getCreateTime().size() == 2) {
+            start = criteria.getCreateTime().get(0).toLocalDateTime().toLocalDate();
+            end = criteria.getCreateTime().get(1).toLocalDateTime().toLocalDate();
+        }
+        return quartzLogWriter.queryStats(criteria.getJobName(), Timestamp.valueOf(start.atStartOfDay()),
+                Timestamp.valueOf(end.plusDays(1).atStartOfDay()));
     }
 
     @Override
@@ -82,6 +104,7 @@ public class QuartzJobServiceImpl implements QuartzJobService {
         if (!CronExpression.isValidExpression(resources.getCronExpression())){
             throw new BadRequestException("cron表达式格式错误");
         }
+        validateInvoker(resources);
         resources = quartzJobRepository.save(resources);
         quartzManage.addJob(resources);
     }
@@ -93,15 +116,53 @@ public class QuartzJobServiceImpl implements QuartzJobService {
             throw new BadRequestException("cron表达式格式错误");
         }
         if(StringUtils.isNotBlank(resources.getSubTask())){
-            List<String> tasks = Arrays.asList(resources.getSubTask().split("[,，]"));
-            if (tasks.contains(resources.getId().toString())) {
+            List<Long> tasks = SubJobExecutor.parseSubTask(resources);
+            if (tasks.contains(resources.getId())) {
                 throw new BadRequestException("子任务中不能添加当前任务ID");
             }
+            checkCycle(resources.getId(), tasks);
         }
+        validateInvoker(resources);
         resources = quartzJobRepository.save(resources);
         quartzManage.updateJobCron(resources);
     }
 
+    /**
+     * 校验任务的 Bean 与方法是否存在，并刷新缓存的调用句柄
+     * @param resources 任务
+     */
+    private void validateInvoker(QuartzJob resources) {
+        try {
+            JobInvokerRegistry.validate(resources);
+        } catch (NoSuchMethodException | BeansException e) {
+            throw new BadRequestException("执行方法不存在：" + resources.getBeanName() + "." + resources.getMethodName());
+        }
+    }
+
+    /**
+     * 沿子任务向下查找，出现当前任务即存在循环依赖
+     * @param id 当前任务ID
+     * @param tasks 当前任务的子任务
+     */
+    private void checkCycle(Long id, List<Long> tasks) {
+        Set<Long> visited = new HashSet<>(tasks);
+        Set<Long> level = new HashSet<>(tasks);
+        while (!level.isEmpty()) {
+            Set<Long> next = new HashSet<>();
+            for (QuartzJob job : quartzJobRepository.findAllById(level)) {
+                for (Long child : SubJobExecutor.parseSubTask(job)) {
+                    if (id.equals(child)) {
+                        throw new BadRequestException("子任务存在循环依赖：" + job.getId() + " -> " + id);
+                    }
+                    if (visited.add(child)) {
+                        next.add(child);
+                    }
+                }
+            }
+            level = next;
+        }
+    }
+
     @Override
     public void updateIsPause(QuartzJob quartzJob) {
         if (quartzJob.getIsPause()) {
@@ -126,36 +187,13 @@ public class QuartzJobServiceImpl implements QuartzJobService {
             QuartzJob quartzJob = findById(id);
             quartzManage.deleteJob(quartzJob);
             quartzJobRepository.delete(quartzJob);
+            JobInvokerRegistry.invalidate(quartzJob);
         }
     }
 
-    @Async
     @Override
-    @Transactional(rollbackFor = Exception.class)
-    public void executionSubJob(String[] tasks) throws InterruptedException {
-        for (String id : tasks) {
-            if (StrUtil.isBlank(id)) {
-                // 如果是手动清除子任务id，会出现id为空字符串的问题
-                continue;
-            }
-            QuartzJob quartzJob = findById(Long.parseLong(id));
-            // 执行任务
-            String uuid = IdUtil.simpleUUID();
-            quartzJob.setUuid(uuid);
-            // 执行任务
-            execution(quartzJob);
-            // 获取执行状态，如果执行失败则停止后面的子任务执行
-            Boolean result = (Boolean) redisUtils.get(uuid);
-            while (result == null) {
-                // 休眠5秒，再次获取子任务执行情况
-                Thread.sleep(5000);
-                result = (Boolean) redisUtils.get(uuid);
-            }
-            if(!result){
-                redisUtils.del(uuid);
-                break;
-            }
-        }
+    public void executionSubJob(QuartzJob quartzJob) {
+        subJobExecutor.execute(quartzJob);
     }
 
     @Override
@@ -19,14 +19,11 @@ import cn.hutool.extra.template.Template;
 import cn.hutool.extra.template.TemplateConfig;
 import cn.hutool.extra.template.TemplateEngine;
 import cn.hutool.extra.template.TemplateUtil;
-import me.zhengjie.config.thread.ThreadPoolExecutorUtil;
 import me.zhengjie.domain.vo.EmailVo;
 import me.zhengjie.modules.quartz.domain.QuartzJob;
 import me.zhengjie.modules.quartz.domain.QuartzLog;
-import me.zhengjie.modules.quartz.repository.QuartzLogRepository;
 import me.zhengjie.modules.quartz.service.QuartzJobService;
 import me.zhengjie.service.EmailService;
-import me.zhengjie.utils.RedisUtils;
 import me.zhengjie.utils.SpringContextHolder;
 import me.zhengjie.utils.StringUtils;
 import me.zhengjie.utils.ThrowableUtil;
@@ -34,7 +31,7 @@ import org.quartz.JobExecutionContext;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.quartz.QuartzJobBean;
 import java.util.*;
-import java.util.concurrent.*;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 参考人人开源，https://gitee.com/renrenio/renren-security
@@ -49,19 +46,32 @@ import java.util.concurrent.*;
 @Async
 public class ExecutionJob extends QuartzJobBean {
 
-    /** 该处仅供参考 */
-    private final static ThreadPoolExecutor EXECUTOR = ThreadPoolExecutorUtil.getPoll();
-
     @Override
     // JobExecutionContext https://blog.csdn.net/yulei_qq/article/details/104091497
     // JobExecutionContext 是一个包含了各种上下文信息的句柄，指向执行中的JobDetail 实例、执行完成的Trigger实例、Trigger中的JobDataMap(合并中覆盖掉JobDetail的JobDataMap)
     public void executeInternal(JobExecutionContext context) {
         QuartzJob quartzJob = (QuartzJob) context.getMergedJobDataMap().get(QuartzJob.JOB_KEY);
+        // 执行任务
+        System.out.println("--------------------------------------------------------------");
+        System.out.println("任务开始执行，任务名称：" + quartzJob.getJobName());
+        QuartzRunnable task;
+        try {
+            task = new QuartzRunnable(quartzJob.getBeanName(), quartzJob.getMethodName(), quartzJob.getParams());
+        } catch (Exception e) {
+            onComplete(quartzJob, 0, e);
+            return;
+        }
+        // 提交到任务线程池后立即返回，不占用 Quartz 线程等待执行结果
+        SpringContextHolder.getBean(JobExecutor.class).execute(quartzJob, task, (times, error) -> onComplete(quartzJob, times, error));
+    }
+
+    /**
+     * 任务结束回调：记录执行日志，成功时触发子任务，失败时按配置暂停任务并邮件报警
+     */
+    private void onComplete(QuartzJob quartzJob, long times, Throwable e) {
         // 获取spring bean
-        QuartzLogRepository quartzLogRepository = SpringContextHolder.getBean(QuartzLogRepository.class);
+        QuartzLogWriter quartzLogWriter = SpringContextHolder.getBean(QuartzLogWriter.class);
         QuartzJobService quartzJobService = SpringContextHolder.getBean(QuartzJobService.class);
-        RedisUtils redisUtils = SpringContextHolder.getBean(RedisUtils.class);
-        
         String uuid = quartzJob.getUuid();
 
         QuartzLog log = new QuartzLog();
@@ -69,44 +79,35 @@ public class ExecutionJob extends QuartzJobBean {
         log.setBeanName(quartzJob.getBeanName());
         log.setMethodName(quartzJob.getMethodName());
         log.setParams(quartzJob.getParams());
-        long startTime = System.currentTimeMillis();
         log.setCronExpression(quartzJob.getCronExpression());
+        log.setTime(times);
         try {
-            // 执行任务
-            System.out.println("--------------------------------------------------------------");
-            System.out.println("任务开始执行，任务名称：" + quartzJob.getJobName());
-            QuartzRunnable task = new QuartzRunnable(quartzJob.getBeanName(), quartzJob.getMethodName(),
-                    quartzJob.getParams());
-            // 将线程提交到线程池执行
-            Future<?> future = EXECUTOR.submit(task);
-            // 获取线程运行完return的结果
-            future.get();
-            long times = System.currentTimeMillis() - startTime;
-            log.setTime(times);
-            if(StringUtils.isNotBlank(uuid)) {
-                redisUtils.set(uuid, true);
-            }
-            // 任务状态
-            log.setIsSuccess(true);
-            System.out.println("任务执行完毕，任务名称：" + quartzJob.getJobName() + ", 执行时间：" + times + "毫秒");
-            System.out.println("--------------------------------------------------------------");
-            // 判断是否存在子任务
-            if(StringUtils.isNotBlank(quartzJob.getSubTask())){
-                String[] tasks = quartzJob.getSubTask().split("[,，]");
-                // 执行子任务
-                quartzJobService.executionSubJob(tasks);
+            if (e == null) {
+                // 任务状态
+                log.setIsSuccess(true);
+                System.out.println("任务执行完毕，任务名称：" + quartzJob.getJobName() + ", 执行时间：" + times + "毫秒");
+                System.out.println("--------------------------------------------------------------");
+                if(StringUtils.isNotBlank(uuid)) {
+                    // 作为子任务执行时通知依赖它的下游任务，下游由 SubJobExecutor 统一调度
+                    SubJobExecutor.complete(uuid, true);
+                } else if(StringUtils.isNotBlank(quartzJob.getSubTask())){
+                    // 执行子任务
+                    quartzJobService.executionSubJob(quartzJob);
+                }
+                return;
             }
-        } catch (Exception e) {
             if(StringUtils.isNotBlank(uuid)) {
-                redisUtils.set(uuid, false);
+                SubJobExecutor.complete(uuid, false);
             }
             System.out.println("任务执行失败，任务名称：" + quartzJob.getJobName());
             System.out.println("--------------------------------------------------------------");
-            long times = System.currentTimeMillis() - startTime;
-            log.setTime(times);
             // 任务状态 0：成功 1：失败
             log.setIsSuccess(false);
             log.setExceptionDetail(ThrowableUtil.getStackTrace(e));
+            // 队列已满被跳过的执行按错过触发处理，不暂停任务也不报警
+            if (e instanceof RejectedExecutionException) {
+                return;
+            }
             // 任务如果失败了则暂停
             if(quartzJob.getPauseAfterFailure() != null && quartzJob.getPauseAfterFailure()){
                 quartzJob.setIsPause(false);
@@ -122,8 +123,8 @@ public class ExecutionJob extends QuartzJobBean {
                 }
             }
         } finally {
-            // 将执行日志封装对象保存起来，便于查找程序错误
-            quartzLogRepository.save(log);
+            // 将执行日志封装对象保存起来，便于查找程序错误，由后台线程批量写入
+            quartzLogWriter.submit(log);
         }
     }
 
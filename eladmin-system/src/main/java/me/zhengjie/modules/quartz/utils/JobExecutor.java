@@ -0,0 +1,213 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.modules.quartz.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import me.zhengjie.config.JobExecutorProperties;
+import me.zhengjie.modules.quartz.domain.QuartzJob;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 定时任务执行线程池：Quartz 线程提交任务后立即返回，任务结束、超时或被跳过时回调，
+ * 回调负责记录日志与触发子任务。超时的任务只能请求中断，其回调交给单独的线程执行，不占用超时检查线程
+ * @author /
+ */
+@Slf4j
+@Component
+public class JobExecutor {
+
+    private final JobExecutorProperties properties;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService timer;
+    private final ExecutorService callbackExecutor;
+    private final LongAdder skippedCount = new LongAdder();
+    private final LongAdder timeoutCount = new LongAdder();
+
+    public JobExecutor(JobExecutorProperties properties) {
+        this.properties = properties;
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(properties.getThreads(), properties.getThreads(), 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(properties.getQueueCapacity()), r -> {
+            Thread thread = new Thread(r, "el-job-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, rejectedHandler(properties.getPolicy()));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "el-job-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger callbackIndex = new AtomicInteger();
+        this.callbackExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "el-job-callback-" + callbackIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 提交任务，不等待执行结果
+     * @param quartzJob 任务
+     * @param task 任务执行体
+     * @param callback 结束回调，参数为执行耗时与异常，成功时异常为 null
+     */
+    public void execute(QuartzJob quartzJob, Callable<?> task, Callback callback) {
+        executor.execute(new JobFuture(task, timeoutOf(quartzJob), callback));
+    }
+
+    /**
+     * 线程池状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(8);
+        stats.put("poolSize", executor.getPoolSize());
+        stats.put("activeCount", executor.getActiveCount());
+        stats.put("queueSize", executor.getQueue().size());
+        stats.put("queueRemaining", executor.getQueue().remainingCapacity());
+        stats.put("completed", executor.getCompletedTaskCount());
+        stats.put("skipped", skippedCount.sum());
+        stats.put("timeout", timeoutCount.sum());
+        stats.put("policy", properties.getPolicy());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        executor.shutdown();
+        callbackExecutor.shutdown();
+    }
+
+    /**
+     * 任务的执行超时时间，单位毫秒，0 为不限制
+     */
+    long timeoutOf(QuartzJob quartzJob) {
+        Long timeout = properties.getTimeouts().get(quartzJob.getBeanName() + "." + quartzJob.getMethodName());
+        return timeout != null ? timeout : properties.getTimeout();
+    }
+
+    private RejectedExecutionHandler rejectedHandler(JobExecutorProperties.Policy policy) {
+        switch (policy) {
+            case SKIP:
+                return (r, e) -> {
+                    skippedCount.increment();
+                    ((JobFuture) r).skip();
+                };
+            case CALLER_RUNS:
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+            default:
+                return (r, e) -> {
+                    try {
+                        if (!e.isShutdown()) {
+                            e.getQueue().put(r);
+                            return;
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    ((JobFuture) r).skip();
+                };
+        }
+    }
+
+    /**
+     * 任务结束回调
+     */
+    @FunctionalInterface
+    public interface Callback {
+        /**
+         * @param times 执行耗时，单位毫秒
+         * @param error 异常，成功时为 null；超时为 {@link TimeoutException}，被跳过为 {@link RejectedExecutionException}
+         */
+        void onComplete(long times, Throwable error);
+    }
+
+    private class JobFuture extends FutureTask<Object> {
+        private final long timeout;
+        private final Callback callback;
+        private volatile long startTime = System.currentTimeMillis();
+        private volatile ScheduledFuture<?> timeoutFuture;
+
+        JobFuture(Callable<?> task, long timeout, Callback callback) {
+            super(task::call);
+            this.timeout = timeout;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            startTime = System.currentTimeMillis();
+            if (timeout > 0) {
+                timeoutFuture = timer.schedule(() -> {
+                    if (cancel(true)) {
+                        timeoutCount.increment();
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+            }
+            super.run();
+        }
+
+        void skip() {
+            setException(new RejectedExecutionException("执行队列已满，跳过本次执行"));
+        }
+
+        @Override
+        protected void done() {
+            ScheduledFuture<?> scheduled = timeoutFuture;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            long times = System.currentTimeMillis() - startTime;
+            if (isCancelled()) {
+                // 由超时检查线程调用，中断只是请求，任务线程可能仍在运行；回调可能发送邮件等较慢的操作，交给其他线程执行
+                log.warn("定时任务执行超时 {} 毫秒，已请求中断，任务可能仍在运行", timeout);
+                Throwable error = new TimeoutException("任务执行超时：" + timeout + "毫秒，已请求中断，任务可能仍在运行");
+                try {
+                    callbackExecutor.execute(() -> onComplete(times, error));
+                } catch (RejectedExecutionException e) {
+                    onComplete(times, error);
+                }
+                return;
+            }
+            Throwable error = null;
+            try {
+                get();
+            } catch (ExecutionException e) {
+                error = e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = e;
+            }
+            onComplete(times, error);
+        }
+
+        private void onComplete(long times, Throwable error) {
+            try {
+                callback.onComplete(times, error);
+            } catch (Exception e) {
+                log.error("定时任务回调执行失败", e);
+            }
+        }
+    }
+}
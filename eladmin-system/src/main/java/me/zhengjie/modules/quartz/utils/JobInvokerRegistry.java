@@ -0,0 +1,95 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.modules.quartz.utils;
+
+import me.zhengjie.modules.quartz.domain.QuartzJob;
+import me.zhengjie.utils.SpringContextHolder;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 定时任务调用句柄缓存：按 Bean名称、方法名称、是否带参数解析一次目标方法，
+ * 生成绑定了 Bean 实例的 MethodHandle，之后每次触发直接调用，不再查找 Bean 与反射方法
+ * @author /
+ */
+public class JobInvokerRegistry {
+
+    private static final MethodType WITH_PARAMS = MethodType.methodType(Object.class, String.class);
+    private static final MethodType WITHOUT_PARAMS = MethodType.methodType(Object.class);
+
+    private static final Map<String, MethodHandle> INVOKERS = new ConcurrentHashMap<>();
+
+    /**
+     * 获取任务的调用句柄，首次使用时解析并缓存
+     * @param beanName Bean名称
+     * @param methodName 方法名称
+     * @param params 参数
+     * @return 带参数时类型为 (String)Object，否则为 ()Object
+     * @throws NoSuchMethodException 方法不存在
+     */
+    public static MethodHandle get(String beanName, String methodName, String params) throws NoSuchMethodException {
+        boolean hasParams = StringUtils.isNotBlank(params);
+        String key = key(beanName, methodName, hasParams);
+        MethodHandle invoker = INVOKERS.get(key);
+        if (invoker == null) {
+            invoker = resolve(beanName, methodName, hasParams);
+            INVOKERS.put(key, invoker);
+        }
+        return invoker;
+    }
+
+    /**
+     * 校验任务的 Bean 与方法是否存在，同时预先缓存调用句柄
+     * @param quartzJob 任务
+     * @throws NoSuchMethodException 方法不存在
+     */
+    public static void validate(QuartzJob quartzJob) throws NoSuchMethodException {
+        invalidate(quartzJob);
+        get(quartzJob.getBeanName(), quartzJob.getMethodName(), quartzJob.getParams());
+    }
+
+    /**
+     * 任务定义变更后移除对应的调用句柄
+     * @param quartzJob 任务
+     */
+    public static void invalidate(QuartzJob quartzJob) {
+        INVOKERS.remove(key(quartzJob.getBeanName(), quartzJob.getMethodName(), StringUtils.isNotBlank(quartzJob.getParams())));
+    }
+
+    private static MethodHandle resolve(String beanName, String methodName, boolean hasParams) throws NoSuchMethodException {
+        Object target = SpringContextHolder.getBean(beanName);
+        Method method = hasParams ? target.getClass().getDeclaredMethod(methodName, String.class)
+                : target.getClass().getDeclaredMethod(methodName);
+        ReflectionUtils.makeAccessible(method);
+        try {
+            return MethodHandles.lookup().unreflect(method).bindTo(target)
+                    .asType(hasParams ? WITH_PARAMS : WITHOUT_PARAMS);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String key(String beanName, String methodName, boolean hasParams) {
+        return beanName + "#" + methodName + "#" + hasParams;
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.modules.quartz.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import me.zhengjie.config.QuartzLogProperties;
+import me.zhengjie.modules.quartz.domain.QuartzLog;
+import me.zhengjie.modules.quartz.service.dto.QuartzLogStatDto;
+import me.zhengjie.utils.StringUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 定时任务日志存储：任务线程只负责入队，后台线程批量插入 sys_quartz_log；
+ * 异常详情按 SHA-256 指纹去重，相同的堆栈只在 sys_quartz_log_exception 中保存一份；
+ * 超出保留期的明细日志定期汇总为每日统计写入 sys_quartz_log_stat 后删除
+ * @author /
+ */
+@Slf4j
+@Component
+public class QuartzLogWriter implements Runnable {
+
+    private static final String INSERT_SQL = "insert into sys_quartz_log (job_name, bean_name, method_name, params, " +
+            "cron_expression, is_success, exception_fingerprint, time, create_time) values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPSERT_EXCEPTION_SQL = "insert into sys_quartz_log_exception (fingerprint, exception_detail, " +
+            "update_time) values (?, ?, ?) on duplicate key update update_time = values(update_time)";
+    private static final String SELECT_EXCEPTION_SQL = "select fingerprint, exception_detail from sys_quartz_log_exception " +
+            "where fingerprint in (%s)";
+    private static final String DELETE_EXCEPTION_SQL = "delete from sys_quartz_log_exception where update_time < ? and " +
+            "fingerprint not in (select exception_fingerprint from sys_quartz_log where exception_fingerprint is not null)";
+    /**
+     * 按 日期、任务名称、Bean名称、方法名称 分组统计明细日志，百分位数使用最近秩法：
+     * 组内按耗时升序编号，取编号不小于 ceil(p * 执行次数) 的最小耗时。%s 处为附加的过滤条件
+     */
+    private static final String AGGREGATE_SQL = "select stat_date, job_name, bean_name, method_name, count(*) run_count, " +
+            "sum(case when is_success = 1 then 0 else 1 end) failure_count, " +
+            "min(case when rn >= ceil(0.5 * cnt) then time end) p50_time, " +
+            "min(case when rn >= ceil(0.95 * cnt) then time end) p95_time, max(time) max_time " +
+            "from (select date(create_time) stat_date, ifnull(job_name, '') job_name, ifnull(bean_name, '') bean_name, " +
+            "ifnull(method_name, '') method_name, is_success, ifnull(time, 0) time, " +
+            "row_number() over (partition by date(create_time), ifnull(job_name, ''), ifnull(bean_name, ''), " +
+            "ifnull(method_name, '') order by ifnull(time, 0)) rn, " +
+            "count(*) over (partition by date(create_time), ifnull(job_name, ''), ifnull(bean_name, ''), " +
+            "ifnull(method_name, '')) cnt " +
+            "from sys_quartz_log where create_time >= ? and create_time < ?%s) t " +
+            "group by stat_date, job_name, bean_name, method_name";
+    private static final String ROLLUP_SQL = "insert into sys_quartz_log_stat (stat_date, job_name, bean_name, method_name, " +
+            "run_count, failure_count, p50_time, p95_time, max_time, job_hash) " +
+            "select s.*, sha2(concat_ws(char(0), s.job_name, s.bean_name, s.method_name), 256) " +
+            "from (" + String.format(AGGREGATE_SQL, "") + ") s " +
+            "on duplicate key update run_count = values(run_count), failure_count = values(failure_count), " +
+            "p50_time = values(p50_time), p95_time = values(p95_time), max_time = values(max_time)";
+    private static final String DELETE_RAW_SQL = "delete from sys_quartz_log where create_time >= ? and create_time < ?";
+    private static final String SELECT_STAT_SQL = "select job_name, bean_name, method_name, stat_date, run_count, " +
+            "failure_count, p50_time, p95_time, max_time from sys_quartz_log_stat where stat_date >= ? and stat_date < ?%s";
+    private static final String JOB_NAME_FILTER = " and job_name like ?";
+
+    /**
+     * 已写入的异常指纹数量上限，超出时清空
+     */
+    private static final int MAX_KNOWN_FINGERPRINTS = 1024;
+
+    private final QuartzLogProperties properties;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<QuartzLog> queue;
+    private final Set<String> knownFingerprints = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+    private Thread worker;
+    private ScheduledExecutorService rollupExecutor;
+
+    public QuartzLogWriter(QuartzLogProperties properties, JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.properties = properties;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.queue = new ArrayBlockingQueue<>(properties.getQueueCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        worker = new Thread(this, "el-quartz-log-writer");
+        worker.setDaemon(true);
+        worker.start();
+        rollupExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "el-quartz-log-rollup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rollupExecutor.scheduleWithFixedDelay(this::rollup, TimeUnit.MINUTES.toMillis(1),
+                properties.getRollupInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 日志入队，队列已满或已关闭时在当前线程直接写入
+     * @param quartzLog /
+     */
+    public void submit(QuartzLog quartzLog) {
+        quartzLog.setCreateTime(new Timestamp(System.currentTimeMillis()));
+        if (StringUtils.isNotBlank(quartzLog.getExceptionDetail())) {
+            quartzLog.setExceptionFingerprint(DigestUtils.sha256Hex(quartzLog.getExceptionDetail()));
+        }
+        if (!running || !queue.offer(quartzLog)) {
+            List<QuartzLog> batch = new ArrayList<>(1);
+            batch.add(quartzLog);
+            flush(batch);
+        }
+    }
+
+    @Override
+    public void run() {
+        List<QuartzLog> batch = new ArrayList<>(properties.getBatchSize());
+        long deadline = System.currentTimeMillis() + properties.getFlushInterval();
+        while (running || !queue.isEmpty()) {
+            try {
+                long wait = Math.max(deadline - System.currentTimeMillis(), 0);
+                QuartzLog first = queue.poll(wait, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, properties.getBatchSize() - batch.size());
+                }
+            } catch (InterruptedException e) {
+                // 关闭时被中断，继续把剩余日志写完
+                running = false;
+            }
+            if (batch.size() >= properties.getBatchSize() || System.currentTimeMillis() >= deadline || !running) {
+                flush(batch);
+                deadline = System.currentTimeMillis() + properties.getFlushInterval();
+            }
+        }
+        flush(batch);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (rollupExecutor != null) {
+            rollupExecutor.shutdownNow();
+        }
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    /**
+     * 为指纹对应的日志填充异常详情
+     * @param logs 查询得到的日志
+     */
+    public void fillExceptionDetail(Collection<QuartzLog> logs) {
+        Set<String> fingerprints = new HashSet<>();
+        for (QuartzLog quartzLog : logs) {
+            if (quartzLog.getExceptionDetail() == null && quartzLog.getExceptionFingerprint() != null) {
+                fingerprints.add(quartzLog.getExceptionFingerprint());
+            }
+        }
+        if (fingerprints.isEmpty()) {
+            return;
+        }
+        Map<String, String> details = new HashMap<>(fingerprints.size() * 4 / 3 + 1);
+        jdbcTemplate.query(String.format(SELECT_EXCEPTION_SQL, String.join(",", Collections.nCopies(fingerprints.size(), "?"))),
+                rs -> {
+                    details.put(rs.getString(1), rs.getString(2));
+                }, fingerprints.toArray());
+        for (QuartzLog quartzLog : logs) {
+            if (quartzLog.getExceptionDetail() == null && quartzLog.getExceptionFingerprint() != null) {
+                quartzLog.setExceptionDetail(details.get(quartzLog.getExceptionFingerprint()));
+            }
+        }
+    }
+
+    /**
+     * 查询每日执行统计：保留期以前的日期读取汇总表，保留期内的日期由明细日志即时计算
+     * @param jobName 任务名称，模糊匹配，可为空
+     * @param start 开始时间（含）
+     * @param end 结束时间（不含）
+     * @return 按日期倒序
+     */
+    public List<QuartzLogStatDto> queryStats(String jobName, Timestamp start, Timestamp end) {
+        Timestamp cutoff = Timestamp.valueOf(rawCutoff().atStartOfDay());
+        boolean filter = StringUtils.isNotBlank(jobName);
+        String condition = filter ? JOB_NAME_FILTER : "";
+        BeanPropertyRowMapper<QuartzLogStatDto> rowMapper = new BeanPropertyRowMapper<>(QuartzLogStatDto.class);
+        List<QuartzLogStatDto> stats = new ArrayList<>();
+        if (start.before(cutoff)) {
+            Timestamp statEnd = end.before(cutoff) ? end : cutoff;
+            stats.addAll(jdbcTemplate.query(String.format(SELECT_STAT_SQL, condition), rowMapper,
+                    args(filter, jobName, new Date(start.getTime()), new Date(statEnd.getTime()))));
+        }
+        if (end.after(cutoff)) {
+            stats.addAll(jdbcTemplate.query(String.format(AGGREGATE_SQL, condition), rowMapper,
+                    args(filter, jobName, start.after(cutoff) ? start : cutoff, end)));
+        }
+        stats.sort(Comparator.comparing(QuartzLogStatDto::getStatDate).reversed()
+                .thenComparing(stat -> String.valueOf(stat.getJobName())));
+        return stats;
+    }
+
+    /**
+     * 将保留期以前的明细日志按天汇总后删除，每天在独立的事务中处理，可重复执行
+     */
+    void rollup() {
+        try {
+            // 清空后下一次写入会刷新指纹的使用时间，避免仍在使用的异常详情被清理
+            knownFingerprints.clear();
+            LocalDate cutoff = rawCutoff();
+            Timestamp oldest = jdbcTemplate.queryForObject("select min(create_time) from sys_quartz_log", Timestamp.class);
+            if (oldest != null) {
+                for (LocalDate day = oldest.toLocalDateTime().toLocalDate(); day.isBefore(cutoff); day = day.plusDays(1)) {
+                    Timestamp from = Timestamp.valueOf(day.atStartOfDay());
+                    Timestamp to = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+                    transactionTemplate.execute(status -> {
+                        jdbcTemplate.update(ROLLUP_SQL, from, to);
+                        return jdbcTemplate.update(DELETE_RAW_SQL, from, to);
+                    });
+                }
+            }
+            jdbcTemplate.update(DELETE_EXCEPTION_SQL, Timestamp.valueOf(cutoff.atStartOfDay()));
+        } catch (Exception e) {
+            log.error("定时任务日志汇总失败：{}", e.getMessage(), e);
+        }
+    }
+
+    private LocalDate rawCutoff() {
+        return LocalDate.now().minusDays(properties.getRawDays());
+    }
+
+    private static Object[] args(boolean filter, String jobName, Object from, Object to) {
+        return filter ? new Object[]{from, to, "%" + jobName + "%"} : new Object[]{from, to};
+    }
+
+    private void flush(List<QuartzLog> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, String> details = new LinkedHashMap<>();
+            for (QuartzLog quartzLog : batch) {
+                String fingerprint = quartzLog.getExceptionFingerprint();
+                if (fingerprint != null && !knownFingerprints.contains(fingerprint)) {
+                    details.put(fingerprint, quartzLog.getExceptionDetail());
+                }
+            }
+            if (!details.isEmpty()) {
+                Timestamp now = new Timestamp(System.currentTimeMillis());
+                jdbcTemplate.batchUpdate(UPSERT_EXCEPTION_SQL, details.entrySet(), details.size(), (ps, entry) -> {
+                    ps.setString(1, entry.getKey());
+                    ps.setString(2, entry.getValue());
+                    ps.setTimestamp(3, now);
+                });
+                if (knownFingerprints.size() + details.size() > MAX_KNOWN_FINGERPRINTS) {
+                    knownFingerprints.clear();
+                }
+                knownFingerprints.addAll(details.keySet());
+            }
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, quartzLog) -> {
+                ps.setString(1, quartzLog.getJobName());
+                ps.setString(2, quartzLog.getBeanName());
+                ps.setString(3, quartzLog.getMethodName());
+                ps.setString(4, quartzLog.getParams());
+                ps.setString(5, quartzLog.getCronExpression());
+                ps.setObject(6, quartzLog.getIsSuccess());
+                ps.setString(7, quartzLog.getExceptionFingerprint());
+                ps.setObject(8, quartzLog.getTime());
+                ps.setTimestamp(9, quartzLog.getCreateTime());
+            });
+        } catch (Exception e) {
+            log.error("定时任务日志批量写入失败，丢弃 {} 条：{}", batch.size(), e.getMessage(), e);
+        } finally {
+            batch.clear();
+        }
+    }
+}
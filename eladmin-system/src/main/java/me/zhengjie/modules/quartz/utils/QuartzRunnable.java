@@ -16,10 +16,8 @@
 package me.zhengjie.modules.quartz.utils;
 
 import lombok.extern.slf4j.Slf4j;
-import me.zhengjie.utils.SpringContextHolder;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.util.ReflectionUtils;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
 import java.util.concurrent.Callable;
 
 /**
@@ -31,30 +29,27 @@ import java.util.concurrent.Callable;
 // Callable 有返回值的线程接口，Runnable为无返回值的线程接口
 public class QuartzRunnable implements Callable<Object> {
 
-	private final Object target;
-	private final Method method;
+	private final MethodHandle invoker;
 	private final String params;
 
 	QuartzRunnable(String beanName, String methodName, String params)
 			throws NoSuchMethodException, SecurityException {
-		this.target = SpringContextHolder.getBean(beanName);
 		this.params = params;
-
-		if (StringUtils.isNotBlank(params)) {
-			this.method = target.getClass().getDeclaredMethod(methodName, String.class);
-		} else {
-			this.method = target.getClass().getDeclaredMethod(methodName);
-		}
+		// 调用句柄只在首次触发时解析，之后从缓存获取
+		this.invoker = JobInvokerRegistry.get(beanName, methodName, params);
 	}
 
 	@Override
 	public Object call() throws Exception {
-		ReflectionUtils.makeAccessible(method);
-		if (StringUtils.isNotBlank(params)) {
-			method.invoke(target, params);
-		} else {
-			method.invoke(target);
+		try {
+			if (StringUtils.isNotBlank(params)) {
+				return (Object) invoker.invokeExact(params);
+			}
+			return (Object) invoker.invokeExact();
+		} catch (Exception | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
 		}
-		return null;
 	}
 }
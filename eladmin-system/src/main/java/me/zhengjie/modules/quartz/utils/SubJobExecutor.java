@@ -0,0 +1,192 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.modules.quartz.utils;
+
+import cn.hutool.core.util.IdUtil;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import me.zhengjie.config.JobExecutorProperties;
+import me.zhengjie.modules.quartz.domain.QuartzJob;
+import me.zhengjie.modules.quartz.repository.QuartzJobRepository;
+import me.zhengjie.utils.StringUtils;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 子任务依赖执行：以 subTask 为边，把主任务可达的子任务组成有向无环图，
+ * 每个任务在所有上游任务成功后立即触发，互不依赖的分支并行执行，
+ * 上游失败时取消全部下游任务。任务完成通过进程内的 CompletableFuture 通知，不再轮询 Redis，
+ * 超过等待时间仍未结束的任务按失败处理，避免结果丢失时等待记录一直留在内存中
+ *
+ * @author /
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SubJobExecutor {
+
+    /**
+     * 子任务执行标识 -> 执行结果
+     */
+    private static final Map<String, CompletableFuture<Boolean>> PENDING = new ConcurrentHashMap<>();
+
+    private final QuartzJobRepository quartzJobRepository;
+    private final QuartzManage quartzManage;
+    private final JobExecutor jobExecutor;
+    private final JobExecutorProperties properties;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "el-sub-job-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 子任务执行结束后由 {@link ExecutionJob} 调用
+     * @param uuid 子任务执行标识
+     * @param success 是否成功
+     */
+    public static void complete(String uuid, boolean success) {
+        CompletableFuture<Boolean> future = PENDING.remove(uuid);
+        if (future != null) {
+            future.complete(success);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * 主任务成功后调用，触发其下游的全部子任务，不阻塞当前线程
+     * @param root 主任务
+     * @return 全部子任务结束后完成，结果为是否全部成功
+     */
+    public CompletableFuture<Boolean> execute(QuartzJob root) {
+        Map<Long, QuartzJob> jobs = new HashMap<>();
+        Map<Long, Set<Long>> upstream = new HashMap<>();
+        List<Long> order = sort(root, jobs, upstream);
+        Map<Long, CompletableFuture<Boolean>> results = new HashMap<>(order.size() * 4 / 3 + 1);
+        results.put(root.getId(), CompletableFuture.completedFuture(true));
+        for (Long id : order) {
+            QuartzJob job = jobs.get(id);
+            CompletableFuture<Boolean>[] parents = upstream.get(id).stream().map(results::get).toArray(CompletableFuture[]::new);
+            CompletableFuture<Boolean> result = CompletableFuture.allOf(parents).thenCompose(v -> {
+                for (CompletableFuture<Boolean> parent : parents) {
+                    if (!parent.join()) {
+                        log.warn("上游任务失败，取消子任务：{}", job.getJobName());
+                        return CompletableFuture.completedFuture(false);
+                    }
+                }
+                return start(job);
+            });
+            results.put(id, result);
+        }
+        return CompletableFuture.allOf(results.values().toArray(new CompletableFuture[0]))
+                .thenApply(v -> results.values().stream().allMatch(CompletableFuture::join));
+    }
+
+    private CompletableFuture<Boolean> start(QuartzJob job) {
+        String uuid = IdUtil.simpleUUID();
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        PENDING.put(uuid, future);
+        // 等待时间不小于任务自身的超时时间，结果丢失时到期按失败处理，下游任务随之取消
+        long wait = Math.max(properties.getSubJobTimeout(), jobExecutor.timeoutOf(job));
+        ScheduledFuture<?> expire = timer.schedule(() -> {
+            if (PENDING.remove(uuid, future)) {
+                log.warn("子任务超过 {} 毫秒未结束，按失败处理：{}", wait, job.getJobName());
+                future.completeExceptionally(new TimeoutException("子任务等待超时：" + wait + "毫秒"));
+            }
+        }, wait, TimeUnit.MILLISECONDS);
+        future.whenComplete((success, error) -> expire.cancel(false));
+        job.setUuid(uuid);
+        try {
+            quartzManage.runJobNow(job);
+        } catch (Exception e) {
+            log.error("子任务触发失败：{}", job.getJobName(), e);
+            complete(uuid, false);
+        }
+        return future.exceptionally(error -> false);
+    }
+
+    /**
+     * 按层批量加载主任务可达的子任务，并按拓扑顺序返回；处在环上的任务不会被执行
+     */
+    private List<Long> sort(QuartzJob root, Map<Long, QuartzJob> jobs, Map<Long, Set<Long>> upstream) {
+        Map<Long, List<Long>> downstream = new HashMap<>();
+        downstream.put(root.getId(), parseSubTask(root));
+        Set<Long> level = new LinkedHashSet<>(downstream.get(root.getId()));
+        while (!level.isEmpty()) {
+            Set<Long> next = new LinkedHashSet<>();
+            for (QuartzJob job : quartzJobRepository.findAllById(level)) {
+                jobs.put(job.getId(), job);
+                List<Long> children = parseSubTask(job);
+                downstream.put(job.getId(), children);
+                next.addAll(children);
+            }
+            next.removeAll(downstream.keySet());
+            level = next;
+        }
+        for (Map.Entry<Long, List<Long>> entry : downstream.entrySet()) {
+            for (Long child : entry.getValue()) {
+                if (jobs.containsKey(child)) {
+                    upstream.computeIfAbsent(child, k -> new LinkedHashSet<>()).add(entry.getKey());
+                }
+            }
+        }
+        // Kahn 拓扑排序，主任务视为已完成
+        Map<Long, Integer> inDegree = new HashMap<>();
+        upstream.forEach((id, parents) -> inDegree.put(id, parents.size()));
+        Deque<Long> ready = new ArrayDeque<>(Collections.singleton(root.getId()));
+        List<Long> order = new ArrayList<>(jobs.size());
+        while (!ready.isEmpty()) {
+            Long id = ready.poll();
+            for (Long child : downstream.getOrDefault(id, Collections.emptyList())) {
+                Integer degree = inDegree.get(child);
+                if (degree != null && degree > 0) {
+                    inDegree.put(child, degree - 1);
+                    if (degree == 1) {
+                        order.add(child);
+                        ready.add(child);
+                    }
+                }
+            }
+        }
+        if (order.size() < jobs.size()) {
+            log.warn("子任务存在循环依赖，已跳过：{}", inDegree.entrySet().stream()
+                    .filter(e -> e.getValue() > 0).map(Map.Entry::getKey).toArray());
+        }
+        return order;
+    }
+
+    /**
+     * 解析子任务ID，忽略手动清除子任务后留下的空字符串
+     */
+    public static List<Long> parseSubTask(QuartzJob job) {
+        List<Long> ids = new ArrayList<>();
+        if (StringUtils.isNotBlank(job.getSubTask())) {
+            for (String id : job.getSubTask().split("[,，]")) {
+                if (StringUtils.isNotBlank(id)) {
+                    ids.add(Long.parseLong(id.trim()));
+                }
+            }
+        }
+        return ids;
+    }
+}
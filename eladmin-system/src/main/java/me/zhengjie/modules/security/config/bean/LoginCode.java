@@ -54,6 +54,10 @@ public class LoginCode {
      * 字体大小
      */
     private int fontSize = 25;
+    /**
+     * 预先生成的验证码数量，为 0 时不使用验证码池
+     */
+    private int poolSize = 100;
 
     public LoginCodeEnum getCodeType() {
         return codeType;
@@ -45,6 +45,16 @@ public class LoginProperties {
      */
     private boolean cacheEnable;
 
+    /**
+     * 用户登录信息缓存的最大数量
+     */
+    private Integer cacheSize = 1000;
+
+    /**
+     * 用户登录信息缓存的存活时间(毫秒)
+     */
+    private Long cacheTtl = 1800000L;
+
     public boolean isSingleLogin() {
         return singleLogin;
     }
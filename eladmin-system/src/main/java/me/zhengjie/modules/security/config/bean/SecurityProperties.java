@@ -66,6 +66,26 @@ public class SecurityProperties {
      */
     private Long renew;
 
+    /**
+     * 在线用户本地缓存最大条目数
+     */
+    private Integer localCacheSize = 10000;
+
+    /**
+     * 在线用户本地缓存条目存活时间，单位毫秒
+     */
+    private Long localCacheTtl = 60000L;
+
+    /**
+     * 已校验 Token 本地缓存最大条目数
+     */
+    private Integer tokenCacheSize = 10000;
+
+    /**
+     * 校验失败的 Token 本地缓存时间，单位毫秒
+     */
+    private Long invalidTokenTtl = 60000L;
+
     public String getTokenStartWith() {
         return tokenStartWith + " ";
     }
@@ -18,6 +18,8 @@ package me.zhengjie.modules.security.rest;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.RequiredArgsConstructor;
+import me.zhengjie.modules.security.service.CaptchaPool;
+import me.zhengjie.modules.security.service.OnlineUserCache;
 import me.zhengjie.modules.security.service.OnlineUserService;
 import me.zhengjie.utils.EncryptUtils;
 import org.springframework.data.domain.Pageable;
@@ -39,6 +41,8 @@ import java.util.Set;
 public class OnlineController {
 
     private final OnlineUserService onlineUserService;
+    private final OnlineUserCache onlineUserCache;
+    private final CaptchaPool captchaPool;
 
     @ApiOperation("查询在线用户")
     @GetMapping
@@ -48,6 +52,20 @@ public class OnlineController {
         return new ResponseEntity<>(onlineUserService.getAll(filter, pageable),HttpStatus.OK);
     }
 
+    @ApiOperation("在线用户本地缓存统计")
+    @GetMapping(value = "/cache")
+    @PreAuthorize("@el.check()")
+    public ResponseEntity<Object> cacheStats(){
+        return new ResponseEntity<>(onlineUserCache.getStats(),HttpStatus.OK);
+    }
+
+    @ApiOperation("验证码池统计")
+    @GetMapping(value = "/captcha")
+    @PreAuthorize("@el.check()")
+    public ResponseEntity<Object> captchaStats(){
+        return new ResponseEntity<>(captchaPool.getStats(),HttpStatus.OK);
+    }
+
     @ApiOperation("导出数据")
     @GetMapping(value = "/download")
     @PreAuthorize("@el.check()")
@@ -15,15 +15,16 @@
  */
 package me.zhengjie.modules.security.security;
 
-import cn.hutool.core.date.DateField;
-import cn.hutool.core.date.DateUtil;
 import cn.hutool.core.util.IdUtil;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
 import lombok.extern.slf4j.Slf4j;
 import me.zhengjie.modules.security.config.bean.SecurityProperties;
-import me.zhengjie.utils.RedisUtils;
+import me.zhengjie.modules.security.service.OnlineUserCache;
+import me.zhengjie.utils.LocalCache;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
@@ -31,8 +32,7 @@ import org.springframework.security.core.userdetails.User;
 import org.springframework.stereotype.Component;
 import javax.servlet.http.HttpServletRequest;
 import java.security.Key;
-import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.Collections;
 
 /**
  * InitializingBean https://www.cnblogs.com/weiqihome/p/8922937.html
@@ -45,14 +45,24 @@ import java.util.concurrent.TimeUnit;
 public class TokenProvider implements InitializingBean {
 
     private final SecurityProperties properties;
-    private final RedisUtils redisUtils;
+    private final OnlineUserCache onlineUserCache;
     public static final String AUTHORITIES_KEY = "user";
     private JwtParser jwtParser;
     private JwtBuilder jwtBuilder;
+    /**
+     * Token 摘要 -> 已校验的用户名与鉴权信息
+     */
+    private final LocalCache<String, Verified> verifiedTokens;
+    /**
+     * 最近签名或声明校验失败的 Token 摘要
+     */
+    private final LocalCache<String, Boolean> invalidTokens;
 
-    public TokenProvider(SecurityProperties properties, RedisUtils redisUtils) {
+    public TokenProvider(SecurityProperties properties, OnlineUserCache onlineUserCache) {
         this.properties = properties;
-        this.redisUtils = redisUtils;
+        this.onlineUserCache = onlineUserCache;
+        this.verifiedTokens = new LocalCache<>(properties.getTokenCacheSize(), properties.getTokenValidityInSeconds());
+        this.invalidTokens = new LocalCache<>(properties.getTokenCacheSize(), properties.getInvalidTokenTtl());
     }
 
     @Override
@@ -94,31 +104,82 @@ public class TokenProvider implements InitializingBean {
      * @return /
      */
     Authentication getAuthentication(String token) {
-        Claims claims = getClaims(token);
-        User principal = new User(claims.getSubject(), "******", new ArrayList<>());
-        return new UsernamePasswordAuthenticationToken(principal, token, new ArrayList<>());
+        return verify(token).authentication;
+    }
+
+    /**
+     * 获取 Token 中的用户名，使用已校验 Token 缓存
+     *
+     * @param token /
+     * @return /
+     */
+    public String getUsername(String token) {
+        return verify(token).subject;
     }
 
     public Claims getClaims(String token) {
-        return jwtParser
-                .parseClaimsJws(token)
-                .getBody();
+        String digest = DigestUtils.sha256Hex(token);
+        checkInvalid(digest);
+        try {
+            return jwtParser
+                    .parseClaimsJws(token)
+                    .getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            markInvalid(digest, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 校验 Token，结果按 Token 摘要缓存，存活时间不超过令牌在 Redis 中的有效期。
+     * 缓存中的 Authentication 为所有请求共享，使用时不能修改
+     */
+    private Verified verify(String token) {
+        String digest = DigestUtils.sha256Hex(token);
+        Verified verified = verifiedTokens.get(digest);
+        if (verified != null) {
+            return verified;
+        }
+        checkInvalid(digest);
+        Claims claims;
+        try {
+            claims = jwtParser.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            markInvalid(digest, e);
+            throw e;
+        }
+        User principal = new User(claims.getSubject(), "******", Collections.emptyList());
+        Authentication authentication = new UsernamePasswordAuthenticationToken(principal, token, Collections.emptyList());
+        verified = new Verified(claims.getSubject(), authentication);
+        verifiedTokens.put(digest, verified);
+        return verified;
     }
 
     /**
+     * 最近校验失败的 Token 直接拒绝，不再重复校验签名
+     */
+    private void checkInvalid(String digest) {
+        if (invalidTokens.peek(digest) != null) {
+            throw new JwtException("Token 校验失败");
+        }
+    }
+
+    /**
+     * 只记录结构完整、但签名或声明校验失败的 Token；格式错误的 Token 解析时很快失败，不占用缓存
+     */
+    private void markInvalid(String digest, RuntimeException e) {
+        if (!(e instanceof SignatureException || e instanceof ClaimJwtException)) {
+            return;
+        }
+        invalidTokens.put(digest, Boolean.TRUE);
+    }
+
+    /**
+     * 续期检查基于本地记录的过期时间，未进入检查范围时不访问 Redis
      * @param token 需要检查的token
      */
     public void checkRenewal(String token) {
-        // 判断是否续期token,计算token的过期时间
-        long time = redisUtils.getExpire(properties.getOnlineKey() + token) * 1000;
-        Date expireDate = DateUtil.offset(new Date(), DateField.MILLISECOND, (int) time);
-        // 判断当前时间与过期时间的时间差
-        long differ = expireDate.getTime() - System.currentTimeMillis();
-        // 如果在续期检查的范围内，则续期
-        if (differ <= properties.getDetect()) {
-            long renew = time + properties.getRenew();
-            redisUtils.expire(properties.getOnlineKey() + token, renew, TimeUnit.MILLISECONDS);
-        }
+        onlineUserCache.checkRenewal(token);
     }
 
     public String getToken(HttpServletRequest request) {
@@ -128,4 +189,15 @@ public class TokenProvider implements InitializingBean {
         }
         return null;
     }
+
+    private static class Verified {
+
+        private final String subject;
+        private final Authentication authentication;
+
+        private Verified(String subject, Authentication authentication) {
+            this.subject = subject;
+            this.authentication = authentication;
+        }
+    }
 }
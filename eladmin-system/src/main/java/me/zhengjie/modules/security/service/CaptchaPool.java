@@ -0,0 +1,181 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.modules.security.service;
+
+import cn.hutool.core.util.IdUtil;
+import com.wf.captcha.base.Captcha;
+import lombok.extern.slf4j.Slf4j;
+import me.zhengjie.modules.security.config.bean.LoginCodeEnum;
+import me.zhengjie.modules.security.config.bean.LoginProperties;
+import me.zhengjie.modules.security.config.bean.SecurityProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 验证码池：后台线程按配置的验证码类型预先生成图片并放入有界队列，
+ * 获取验证码时直接取出一个，队列为空时在请求线程中生成。每个验证码只会被取出一次
+ *
+ * @author /
+ */
+@Slf4j
+@Component
+public class CaptchaPool implements Runnable {
+
+    /**
+     * 补充速率的统计间隔，单位毫秒
+     */
+    private static final long RATE_INTERVAL = 1000;
+
+    private final LoginProperties loginProperties;
+    private final SecurityProperties properties;
+    private final LongAdder producedCount = new LongAdder();
+    private final LongAdder pooledCount = new LongAdder();
+    private final LongAdder inlineCount = new LongAdder();
+    private BlockingQueue<CaptchaItem> queue;
+    private volatile double refillRate;
+    private volatile boolean running = true;
+    private Thread producer;
+
+    public CaptchaPool(LoginProperties loginProperties, SecurityProperties properties) {
+        this.loginProperties = loginProperties;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void start() {
+        // 首次调用时会补全默认的验证码配置
+        loginProperties.getCaptcha();
+        int poolSize = loginProperties.getLoginCode().getPoolSize();
+        if (poolSize <= 0) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(poolSize);
+        producer = new Thread(this, "el-captcha-producer");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (producer != null) {
+            producer.interrupt();
+        }
+    }
+
+    /**
+     * 获取一个验证码，池中没有时当场生成
+     *
+     * @return /
+     */
+    public CaptchaItem take() {
+        CaptchaItem item = queue != null ? queue.poll() : null;
+        if (item != null) {
+            pooledCount.increment();
+            return item;
+        }
+        inlineCount.increment();
+        return render();
+    }
+
+    @Override
+    public void run() {
+        long rateStart = System.currentTimeMillis();
+        long rateProduced = 0;
+        while (running) {
+            try {
+                // 队列满时阻塞，直到有验证码被取走
+                queue.put(render());
+                producedCount.increment();
+                long now = System.currentTimeMillis();
+                if (now - rateStart >= RATE_INTERVAL) {
+                    long produced = producedCount.sum();
+                    refillRate = (produced - rateProduced) * 1000d / (now - rateStart);
+                    rateProduced = produced;
+                    rateStart = now;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // 生成失败时不退出，由请求线程当场生成
+                log.error("验证码生成失败", e);
+            }
+        }
+    }
+
+    /**
+     * 验证码池统计信息
+     *
+     * @return /
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(5);
+        stats.put("size", queue != null ? queue.size() : 0);
+        stats.put("produced", producedCount.sum());
+        stats.put("pooled", pooledCount.sum());
+        stats.put("inline", inlineCount.sum());
+        stats.put("refillRate", refillRate);
+        return stats;
+    }
+
+    private CaptchaItem render() {
+        // 获取运算的结果
+        Captcha captcha = loginProperties.getCaptcha();
+        String uuid = properties.getCodeKey() + IdUtil.simpleUUID();
+        //当验证码类型为 arithmetic时且长度 >= 2 时，captcha.text()的结果有几率为浮点型
+        String captchaValue = captcha.text();
+        if (captcha.getCharType() - 1 == LoginCodeEnum.arithmetic.ordinal() && captchaValue.contains(".")) {
+            captchaValue = captchaValue.split("\\.")[0];
+        }
+        return new CaptchaItem(uuid, captchaValue, captcha.toBase64());
+    }
+
+    /**
+     * 生成好的验证码
+     */
+    public static class CaptchaItem {
+
+        private final String uuid;
+        private final String value;
+        private final String image;
+
+        private CaptchaItem(String uuid, String value, String image) {
+            this.uuid = uuid;
+            this.value = value;
+            this.image = image;
+        }
+
+        public String getUuid() {
+            return uuid;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public String getImage() {
+            return image;
+        }
+    }
+}
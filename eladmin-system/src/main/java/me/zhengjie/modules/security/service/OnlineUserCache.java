@@ -0,0 +1,182 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.modules.security.service;
+
+import lombok.extern.slf4j.Slf4j;
+import me.zhengjie.modules.security.config.bean.SecurityProperties;
+import me.zhengjie.modules.security.service.dto.OnlineUserDto;
+import me.zhengjie.utils.LocalCache;
+import me.zhengjie.utils.RedisUtils;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在线用户本地缓存(近端缓存)，位于 Redis 之前，减少鉴权链路上的 Redis 访问次数。
+ * 本地条目有数量与存活时间上限，踢出与退出登录时通过 Redis 发布订阅通知所有节点失效，
+ * 同时在本地记录 Token 在 Redis 中的过期时间，只有进入续期检查范围时才访问 Redis 续期
+ *
+ * @author /
+ */
+@Slf4j
+@Component
+public class OnlineUserCache implements MessageListener {
+
+    /**
+     * 在线用户失效通知频道
+     */
+    public static final String EVICT_CHANNEL = "online-token-evict";
+
+    private final SecurityProperties properties;
+    private final RedisUtils redisUtils;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final LocalCache<String, Entry> cache;
+    private final LongAdder renewCount = new LongAdder();
+
+    public OnlineUserCache(SecurityProperties properties, RedisUtils redisUtils, RedisMessageListenerContainer listenerContainer) {
+        this.properties = properties;
+        this.redisUtils = redisUtils;
+        this.listenerContainer = listenerContainer;
+        this.cache = new LocalCache<>(properties.getLocalCacheSize(), properties.getLocalCacheTtl());
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(EVICT_CHANNEL));
+    }
+
+    /**
+     * 查询在线用户，本地未命中或已过期时回源 Redis
+     *
+     * @param token /
+     * @return 不在线时返回 null
+     */
+    public OnlineUserDto get(String token) {
+        long now = System.currentTimeMillis();
+        // 回源期间 Token 被踢出时，读到的旧数据不会写入本地缓存
+        long version = cache.version();
+        Entry entry = cache.get(token);
+        if (entry != null) {
+            return entry.onlineUser;
+        }
+        String key = properties.getOnlineKey() + token;
+        OnlineUserDto onlineUserDto = (OnlineUserDto) redisUtils.get(key);
+        if (onlineUserDto == null) {
+            return null;
+        }
+        // 剩余时间(秒)，-1 为永久有效，-2 为已不存在
+        long expire = redisUtils.getExpire(key);
+        if (expire == -2) {
+            return null;
+        }
+        long expireTime = expire < 0 ? Long.MAX_VALUE : now + expire * 1000;
+        cache.put(token, new Entry(onlineUserDto, expireTime), expireTime, version);
+        return onlineUserDto;
+    }
+
+    /**
+     * 放入本地缓存
+     *
+     * @param token      /
+     * @param onlineUser /
+     * @param expireTime Token 在 Redis 中的过期时间点(毫秒)
+     */
+    public void put(String token, OnlineUserDto onlineUser, long expireTime) {
+        cache.put(token, new Entry(onlineUser, expireTime), expireTime, cache.version());
+    }
+
+    /**
+     * Token 续期，只有本地记录的过期时间落入续期检查范围时才访问 Redis
+     *
+     * @param token /
+     */
+    public void checkRenewal(String token) {
+        String key = properties.getOnlineKey() + token;
+        long now = System.currentTimeMillis();
+        Entry entry = cache.peek(token);
+        long time = entry != null ? entry.expireTime - now : redisUtils.getExpire(key) * 1000;
+        // 如果在续期检查的范围内，则续期；Token 已不存在时不续期，避免写回索引
+        if (time > 0 && time <= properties.getDetect()) {
+            long renew = time + properties.getRenew();
+            redisUtils.expire(key, renew, TimeUnit.MILLISECONDS);
+            renewCount.increment();
+            OnlineUserDto onlineUser = entry != null ? entry.onlineUser : (OnlineUserDto) redisUtils.get(key);
+            if (entry != null) {
+                entry.expireTime = now + renew;
+            }
+            // 同步更新过期索引，否则持续续期的会话会被当作已过期从在线列表中清理
+            redisUtils.zAdd(OnlineUserService.EXPIRE_KEY, token, now + renew);
+            if (onlineUser != null) {
+                // 登录时间索引的分数不变，重新写入只为补回与过期清理并发时被移除的条目
+                redisUtils.zAdd(OnlineUserService.INDEX_KEY, token, onlineUser.getLoginTime().getTime());
+                // 用户的其他 Token 剩余时间不会超过 max(有效期, 检查范围 + 续期时间)
+                long indexTtl = Math.max(properties.getTokenValidityInSeconds(), properties.getDetect() + properties.getRenew());
+                redisUtils.expire(OnlineUserService.INDEX_USER + onlineUser.getUserName(), indexTtl, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * 失效指定 Token，并通知其他节点
+     *
+     * @param token /
+     */
+    public void evict(String token) {
+        cache.invalidate(token);
+        redisUtils.convertAndSend(EVICT_CHANNEL, token);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object token = redisUtils.deserializeMessage(message.getBody());
+        if (token != null) {
+            cache.invalidate(token.toString());
+        }
+    }
+
+    /**
+     * 缓存统计信息
+     *
+     * @return /
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = cache.getStats();
+        stats.put("renew", renewCount.sum());
+        return stats;
+    }
+
+    private static class Entry {
+
+        private final OnlineUserDto onlineUser;
+
+        /**
+         * Token 在 Redis 中的过期时间点
+         */
+        private volatile long expireTime;
+
+        private Entry(OnlineUserDto onlineUser, long expireTime) {
+            this.onlineUser = onlineUser;
+            this.expireTime = expireTime;
+        }
+    }
+}
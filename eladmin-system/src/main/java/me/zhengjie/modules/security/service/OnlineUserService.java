@@ -36,12 +36,31 @@ import java.util.*;
 @Slf4j
 public class OnlineUserService {
 
+    /**
+     * 在线用户索引：按登录时间排序的 Token 有序集合，用于列表分页
+     */
+    static final String INDEX_KEY = "online::index";
+    /**
+     * 在线用户过期索引：按过期时间排序的 Token 有序集合，续期时同步更新分数，用于清理自然过期的 Token
+     */
+    static final String EXPIRE_KEY = "online::expire";
+    /**
+     * 在线用户索引：用户名 -> Token 集合，续期时同步延长有效期
+     */
+    static final String INDEX_USER = "online::user:";
+    /**
+     * 批量获取在线用户时每批的数量
+     */
+    private static final int BATCH_SIZE = 500;
+
     private final SecurityProperties properties;
     private final RedisUtils redisUtils;
+    private final OnlineUserCache onlineUserCache;
 
-    public OnlineUserService(SecurityProperties properties, RedisUtils redisUtils) {
+    public OnlineUserService(SecurityProperties properties, RedisUtils redisUtils, OnlineUserCache onlineUserCache) {
         this.properties = properties;
         this.redisUtils = redisUtils;
+        this.onlineUserCache = onlineUserCache;
     }
 
     /**
@@ -62,15 +81,30 @@ public class OnlineUserService {
             log.error(e.getMessage(),e);
         }
         redisUtils.set(properties.getOnlineKey() + token, onlineUserDto, properties.getTokenValidityInSeconds()/1000);
+        // 维护索引，续期最长不超过一个有效期加续期时间
+        long now = System.currentTimeMillis();
+        redisUtils.zAdd(INDEX_KEY, token, onlineUserDto != null ? onlineUserDto.getLoginTime().getTime() : now);
+        redisUtils.zAdd(EXPIRE_KEY, token, now + properties.getTokenValidityInSeconds());
+        redisUtils.sSetAndTime(INDEX_USER + jwtUserDto.getUsername(),
+                (properties.getTokenValidityInSeconds() + properties.getRenew()) / 1000, token);
+        if (onlineUserDto != null) {
+            onlineUserCache.put(token, onlineUserDto, now + properties.getTokenValidityInSeconds());
+        }
     }
 
     /**
-     * 查询全部数据
+     * 查询全部数据，无过滤条件时直接按索引分页
      * @param filter /
      * @param pageable /
      * @return /
      */
     public Map<String,Object> getAll(String filter, Pageable pageable){
+        if (StringUtils.isBlank(filter)) {
+            removeExpired();
+            long start = (long) pageable.getPageNumber() * pageable.getPageSize();
+            List<String> tokens = toTokens(redisUtils.zReverseRange(INDEX_KEY, start, start + pageable.getPageSize() - 1));
+            return PageUtil.toPage(getOnlineUsers(tokens), redisUtils.zSize(INDEX_KEY));
+        }
         List<OnlineUserDto> onlineUserDtos = getAll(filter);
         return PageUtil.toPage(
                 PageUtil.toPage(pageable.getPageNumber(),pageable.getPageSize(), onlineUserDtos),
@@ -84,20 +118,12 @@ public class OnlineUserService {
      * @return /
      */
     public List<OnlineUserDto> getAll(String filter){
-        List<String> keys = redisUtils.scan(properties.getOnlineKey() + "*");
-        Collections.reverse(keys);
-        List<OnlineUserDto> onlineUserDtos = new ArrayList<>();
-        for (String key : keys) {
-            OnlineUserDto onlineUserDto = (OnlineUserDto) redisUtils.get(key);
-            if(StringUtils.isNotBlank(filter)){
-                if(onlineUserDto.toString().contains(filter)){
-                    onlineUserDtos.add(onlineUserDto);
-                }
-            } else {
-                onlineUserDtos.add(onlineUserDto);
-            }
+        removeExpired();
+        // 索引按登录时间倒序
+        List<OnlineUserDto> onlineUserDtos = getOnlineUsers(toTokens(redisUtils.zReverseRange(INDEX_KEY, 0, -1)));
+        if(StringUtils.isNotBlank(filter)){
+            onlineUserDtos.removeIf(onlineUserDto -> !onlineUserDto.toString().contains(filter));
         }
-        onlineUserDtos.sort((o1, o2) -> o2.getLoginTime().compareTo(o1.getLoginTime()));
         return onlineUserDtos;
     }
 
@@ -106,8 +132,9 @@ public class OnlineUserService {
      * @param key /
      */
     public void kickOut(String key){
-        key = properties.getOnlineKey() + key;
-        redisUtils.del(key);
+        // 先删除 Redis 中的数据再失效本地缓存，避免其他节点在间隙中回源后继续缓存该 Token
+        remove(key);
+        onlineUserCache.evict(key);
     }
 
     /**
@@ -115,8 +142,8 @@ public class OnlineUserService {
      * @param token /
      */
     public void logout(String token) {
-        String key = properties.getOnlineKey() + token;
-        redisUtils.del(key);
+        remove(token);
+        onlineUserCache.evict(token);
     }
 
     /**
@@ -149,27 +176,25 @@ public class OnlineUserService {
         return (OnlineUserDto)redisUtils.get(key);
     }
 
+    /**
+     * 根据 Token 查询在线用户，优先读取本地缓存
+     * @param token /
+     * @return /
+     */
+    public OnlineUserDto getOnlineUser(String token) {
+        return onlineUserCache.get(token);
+    }
+
     /**
      * 检测用户是否在之前已经登录，已经登录踢下线
      * @param userName 用户名
      */
     public void checkLoginOnUser(String userName, String igoreToken){
-        List<OnlineUserDto> onlineUserDtos = getAll(userName);
-        if(onlineUserDtos ==null || onlineUserDtos.isEmpty()){
-            return;
-        }
-        for(OnlineUserDto onlineUserDto : onlineUserDtos){
-            if(onlineUserDto.getUserName().equals(userName)){
-                try {
-                    String token =EncryptUtils.desDecrypt(onlineUserDto.getKey());
-                    if(StringUtils.isNotBlank(igoreToken)&&!igoreToken.equals(token)){
-                        this.kickOut(token);
-                    }else if(StringUtils.isBlank(igoreToken)){
-                        this.kickOut(token);
-                    }
-                } catch (Exception e) {
-                    log.error("checkUser is error",e);
-                }
+        for (String token : getTokens(userName)) {
+            if (StringUtils.isBlank(igoreToken) || !igoreToken.equals(token)) {
+                this.kickOut(token);
+                // 已过期的 Token 查不到用户名，这里一并从用户索引中移除
+                redisUtils.setRemove(INDEX_USER + userName, token);
             }
         }
     }
@@ -180,12 +205,84 @@ public class OnlineUserService {
      */
     @Async
     public void kickOutForUsername(String username) throws Exception {
-        List<OnlineUserDto> onlineUsers = getAll(username);
-        for (OnlineUserDto onlineUser : onlineUsers) {
-            if (onlineUser.getUserName().equals(username)) {
-                String token =EncryptUtils.desDecrypt(onlineUser.getKey());
-                kickOut(token);
+        for (String token : getTokens(username)) {
+            kickOut(token);
+            redisUtils.setRemove(INDEX_USER + username, token);
+        }
+    }
+
+    /**
+     * 删除在线信息及其索引
+     * @param token /
+     */
+    private void remove(String token) {
+        String key = properties.getOnlineKey() + token;
+        OnlineUserDto onlineUserDto = (OnlineUserDto) redisUtils.get(key);
+        redisUtils.del(key);
+        redisUtils.zRemove(INDEX_KEY, token);
+        redisUtils.zRemove(EXPIRE_KEY, token);
+        if (onlineUserDto != null) {
+            redisUtils.setRemove(INDEX_USER + onlineUserDto.getUserName(), token);
+        }
+    }
+
+    /**
+     * 移除索引中已过期的 Token，未退出登录而自然过期的 Token 不会主动离开索引
+     */
+    private void removeExpired() {
+        Object[] expired = redisUtils.zRangeByScore(EXPIRE_KEY, 0, System.currentTimeMillis()).toArray();
+        if (expired.length > 0) {
+            redisUtils.zRemove(INDEX_KEY, expired);
+            redisUtils.zRemove(EXPIRE_KEY, expired);
+        }
+    }
+
+    /**
+     * 获取用户的所有 Token
+     * @param username /
+     * @return /
+     */
+    private List<String> getTokens(String username) {
+        Set<Object> tokens = redisUtils.sGet(INDEX_USER + username);
+        return tokens == null ? new ArrayList<>() : toTokens(tokens);
+    }
+
+    /**
+     * 根据 Token 批量获取在线用户，已过期的 Token 从索引中移除
+     * @param tokens /
+     * @return /
+     */
+    private List<OnlineUserDto> getOnlineUsers(List<String> tokens) {
+        List<OnlineUserDto> onlineUserDtos = new ArrayList<>(tokens.size());
+        List<Object> expired = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i += BATCH_SIZE) {
+            List<String> batch = tokens.subList(i, Math.min(i + BATCH_SIZE, tokens.size()));
+            List<String> keys = new ArrayList<>(batch.size());
+            for (String token : batch) {
+                keys.add(properties.getOnlineKey() + token);
             }
+            List<Object> values = redisUtils.multiGetOrdered(keys);
+            for (int j = 0; j < batch.size(); j++) {
+                Object value = values.get(j);
+                if (value == null) {
+                    expired.add(batch.get(j));
+                } else {
+                    onlineUserDtos.add((OnlineUserDto) value);
+                }
+            }
+        }
+        if (!expired.isEmpty()) {
+            redisUtils.zRemove(INDEX_KEY, expired.toArray());
+            redisUtils.zRemove(EXPIRE_KEY, expired.toArray());
+        }
+        return onlineUserDtos;
+    }
+
+    private List<String> toTokens(Set<Object> values) {
+        List<String> tokens = new ArrayList<>(values.size());
+        for (Object value : values) {
+            tokens.add(value.toString());
         }
+        return tokens;
     }
 }
@@ -16,16 +16,54 @@
 
 package me.zhengjie.modules.security.service;
 
+import me.zhengjie.config.ElPermissionConfig;
+import me.zhengjie.utils.RedisUtils;
 import me.zhengjie.utils.StringUtils;
+import me.zhengjie.utils.TransactionUtils;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+
 /**
  * @author: liaojinlong
  * @date: 2020/6/11 18:01
- * @apiNote: 用于清理 用户登录信息缓存，为防止Spring循环依赖与安全考虑 ，单独构成工具类
+ * @apiNote: 用于清理 用户登录信息缓存，为防止Spring循环依赖与安全考虑 ，单独构成工具类。
+ * 清理时立即失效本地缓存，存在事务时在提交后再失效一次，并通过 Redis 通知其他节点
  */
 @Component
-public class UserCacheClean {
+public class UserCacheClean implements MessageListener {
+
+    /**
+     * 用户缓存失效通知频道
+     */
+    public static final String EVICT_CHANNEL = "user-cache-evict";
+
+    /**
+     * 表示清理所有用户的消息内容
+     */
+    private static final String ALL = "";
+
+    private final UserDetailsCache userDetailsCache;
+    private final ElPermissionConfig elPermissionConfig;
+    private final RedisUtils redisUtils;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    public UserCacheClean(UserDetailsCache userDetailsCache, ElPermissionConfig elPermissionConfig,
+                          RedisUtils redisUtils, RedisMessageListenerContainer listenerContainer) {
+        this.userDetailsCache = userDetailsCache;
+        this.elPermissionConfig = elPermissionConfig;
+        this.redisUtils = redisUtils;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(EVICT_CHANNEL));
+    }
 
     /**
      * 清理特定用户缓存信息<br>
@@ -35,7 +73,8 @@ public class UserCacheClean {
      */
     public void cleanUserCache(String userName) {
         if (StringUtils.isNotEmpty(userName)) {
-            UserDetailsServiceImpl.userDtoCache.remove(userName);
+            evictLocal(userName);
+            afterCommit(userName);
         }
     }
 
@@ -44,6 +83,33 @@ public class UserCacheClean {
      * ,如发生角色授权信息变化，可以简便的全部失效缓存
      */
     public void cleanAll() {
-        UserDetailsServiceImpl.userDtoCache.clear();
+        evictLocal(ALL);
+        afterCommit(ALL);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object userName = redisUtils.deserializeMessage(message.getBody());
+        if (userName != null) {
+            evictLocal(userName.toString());
+        }
+    }
+
+    private void evictLocal(String userName) {
+        if (ALL.equals(userName)) {
+            userDetailsCache.evictAll();
+            elPermissionConfig.evictAll();
+        } else {
+            userDetailsCache.evict(userName);
+            elPermissionConfig.evict(userName);
+        }
+    }
+
+    private void afterCommit(String userName) {
+        // 提交前其他线程可能读到了旧数据并写入缓存，提交后再失效一次
+        TransactionUtils.afterCommit(() -> {
+            evictLocal(userName);
+            redisUtils.convertAndSend(EVICT_CHANNEL, userName);
+        });
     }
 }
@@ -0,0 +1,76 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.modules.security.service;
+
+import me.zhengjie.modules.security.config.bean.LoginProperties;
+import me.zhengjie.modules.security.service.dto.JwtUserDto;
+import me.zhengjie.utils.LocalCache;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 用户登录信息本地缓存，条目为不可变的 {@link JwtUserDto} 快照，有数量与存活时间上限。
+ * 加载过程中发生过失效的结果不会写入缓存，避免旧数据覆盖失效；命中时直接返回快照，不修改对象也不访问下游
+ *
+ * @author /
+ */
+@Component
+public class UserDetailsCache {
+
+    private final LocalCache<String, JwtUserDto> cache;
+
+    public UserDetailsCache(LoginProperties loginProperties) {
+        this.cache = new LocalCache<>(loginProperties.getCacheSize(), loginProperties.getCacheTtl());
+    }
+
+    /**
+     * 获取用户信息，未命中或已过期时调用 loader 加载
+     *
+     * @param username /
+     * @param loader   加载用户信息
+     * @return /
+     */
+    public JwtUserDto get(String username, Supplier<JwtUserDto> loader) {
+        return cache.get(username, key -> loader.get());
+    }
+
+    /**
+     * 失效指定用户
+     *
+     * @param username /
+     */
+    public void evict(String username) {
+        cache.invalidate(username);
+    }
+
+    /**
+     * 失效全部用户
+     */
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * 缓存统计信息
+     *
+     * @return /
+     */
+    public Map<String, Object> getStats() {
+        return cache.getStats();
+    }
+}
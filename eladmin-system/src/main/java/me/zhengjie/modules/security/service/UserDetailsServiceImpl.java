@@ -28,10 +28,6 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 /**
  * @author Zheng Jie
  * @date 2018-11-22
@@ -43,52 +39,39 @@ public class UserDetailsServiceImpl implements UserDetailsService {
     private final RoleService roleService;
     private final DataService dataService;
     private final LoginProperties loginProperties;
+    private final UserDetailsCache userDetailsCache;
 
     public void setEnableCache(boolean enableCache) {
         this.loginProperties.setCacheEnable(enableCache);
     }
 
-    /**
-     * 用户信息缓存
-     *
-     * @see {@link UserCacheClean}
-     */
-    static Map<String, JwtUserDto> userDtoCache = new ConcurrentHashMap<>();
-
     @Override
     public JwtUserDto loadUserByUsername(String username) {
-        boolean searchDb = true;
-        JwtUserDto jwtUserDto = null;
-        if (loginProperties.isCacheEnable() && userDtoCache.containsKey(username)) {
-            jwtUserDto = userDtoCache.get(username);
-            // 检查dataScope是否修改
-            List<Long> dataScopes = jwtUserDto.getDataScopes();
-            dataScopes.clear();
-            dataScopes.addAll(dataService.getDeptIds(jwtUserDto.getUser()));
-            searchDb = false;
+        if (loginProperties.isCacheEnable()) {
+            // 命中时直接返回快照，数据权限等变更时由 UserCacheClean 失效
+            return userDetailsCache.get(username, () -> loadFromDb(username));
+        }
+        return loadFromDb(username);
+    }
+
+    private JwtUserDto loadFromDb(String username) {
+        UserDto user;
+        try {
+            user = userService.findByName(username);
+        } catch (EntityNotFoundException e) {
+            // SpringSecurity会自动转换UsernameNotFoundException为BadCredentialsException
+            throw new UsernameNotFoundException("", e);
+        }
+        if (user == null) {
+            throw new UsernameNotFoundException("");
         }
-        if (searchDb) {
-            UserDto user;
-            try {
-                user = userService.findByName(username);
-            } catch (EntityNotFoundException e) {
-                // SpringSecurity会自动转换UsernameNotFoundException为BadCredentialsException
-                throw new UsernameNotFoundException("", e);
-            }
-            if (user == null) {
-                throw new UsernameNotFoundException("");
-            } else {
-                if (!user.getEnabled()) {
-                    throw new BadRequestException("账号未激活！");
-                }
-                jwtUserDto = new JwtUserDto(
-                        user,
-                        dataService.getDeptIds(user),
-                        roleService.mapToGrantedAuthorities(user)
-                );
-                userDtoCache.put(username, jwtUserDto);
-            }
+        if (!user.getEnabled()) {
+            throw new BadRequestException("账号未激活！");
         }
-        return jwtUserDto;
+        return new JwtUserDto(
+                user,
+                dataService.getDeptIds(user),
+                roleService.mapToGrantedAuthorities(user)
+        );
     }
 }
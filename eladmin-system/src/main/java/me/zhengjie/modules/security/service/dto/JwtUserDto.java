@@ -16,21 +16,22 @@
 package me.zhengjie.modules.security.service.dto;
 
 import com.alibaba.fastjson.annotation.JSONField;
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import me.zhengjie.modules.system.service.dto.UserDto;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
+ * 用户登录信息，创建后不再修改，可以在多个请求线程间共享
  * @author Zheng Jie
  * @date 2018-11-23
  */
 @Getter
-@AllArgsConstructor
 public class JwtUserDto implements UserDetails {
 
     private final UserDto user;
@@ -41,6 +42,12 @@ public class JwtUserDto implements UserDetails {
     @JSONField(serialize = false)
     private final List<GrantedAuthority> authorities;
 
+    public JwtUserDto(UserDto user, List<Long> dataScopes, List<GrantedAuthority> authorities) {
+        this.user = user;
+        this.dataScopes = Collections.unmodifiableList(new ArrayList<>(dataScopes));
+        this.authorities = Collections.unmodifiableList(new ArrayList<>(authorities));
+    }
+
     public Set<String> getRoles() {
         return authorities.stream().map(GrantedAuthority::getAuthority).collect(Collectors.toSet());
     }
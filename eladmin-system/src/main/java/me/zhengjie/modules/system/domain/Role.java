@@ -21,6 +21,7 @@ import lombok.Getter;
 import lombok.Setter;
 import me.zhengjie.base.BaseEntity;
 import me.zhengjie.utils.enums.DataScopeEnum;
+import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotBlank;
@@ -53,6 +54,7 @@ public class Role extends BaseEntity implements Serializable {
     private Set<User> users;
 
     @ManyToMany
+    @BatchSize(size = 100)
     @JoinTable(name = "sys_roles_menus",
             joinColumns = {@JoinColumn(name = "role_id",referencedColumnName = "role_id")},
             inverseJoinColumns = {@JoinColumn(name = "menu_id",referencedColumnName = "menu_id")})
@@ -60,6 +62,7 @@ public class Role extends BaseEntity implements Serializable {
     private Set<Menu> menus;
 
     @ManyToMany
+    @BatchSize(size = 100)
     @JoinTable(name = "sys_roles_depts",
             joinColumns = {@JoinColumn(name = "role_id",referencedColumnName = "role_id")},
             inverseJoinColumns = {@JoinColumn(name = "dept_id",referencedColumnName = "dept_id")})
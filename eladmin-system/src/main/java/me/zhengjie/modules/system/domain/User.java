@@ -19,6 +19,7 @@ import io.swagger.annotations.ApiModelProperty;
 import lombok.Getter;
 import lombok.Setter;
 import me.zhengjie.base.BaseEntity;
+import org.hibernate.annotations.BatchSize;
 import javax.persistence.*;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotBlank;
@@ -46,6 +47,7 @@ public class User extends BaseEntity implements Serializable {
     private Long id;
 
     @ManyToMany
+    @BatchSize(size = 100)
     @ApiModelProperty(value = "用户角色")
     @JoinTable(name = "sys_users_roles",
             joinColumns = {@JoinColumn(name = "user_id",referencedColumnName = "user_id")},
@@ -53,6 +55,7 @@ public class User extends BaseEntity implements Serializable {
     private Set<Role> roles;
 
     @ManyToMany
+    @BatchSize(size = 100)
     @ApiModelProperty(value = "用户岗位")
     @JoinTable(name = "sys_users_jobs",
             joinColumns = {@JoinColumn(name = "user_id",referencedColumnName = "user_id")},
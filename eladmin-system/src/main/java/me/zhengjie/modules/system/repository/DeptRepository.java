@@ -36,6 +36,13 @@ public interface DeptRepository extends JpaRepository<Dept, Long>, JpaSpecificat
      */
     List<Dept> findByPid(Long id);
 
+    /**
+     * 查询所有部门的 id、pid、enabled，用于构建部门树索引
+     * @return /
+     */
+    @Query("select d.id, d.pid, d.enabled from Dept d")
+    List<Object[]> findTreeNodes();
+
     /**
      * 获取顶级部门
      * @return /
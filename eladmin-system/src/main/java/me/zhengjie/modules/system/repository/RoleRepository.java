@@ -16,6 +16,7 @@
 package me.zhengjie.modules.system.repository;
 
 import me.zhengjie.modules.system.domain.Role;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
@@ -52,6 +53,15 @@ public interface RoleRepository extends JpaRepository<Role, Long>, JpaSpecificat
             "r.role_id = u.role_id AND u.user_id = ?1",nativeQuery = true)
     Set<Role> findByUserId(Long id);
 
+    /**
+     * 根据用户ID查询，同时抓取角色菜单
+     * @param id 用户ID
+     * @return /
+     */
+    @EntityGraph(attributePaths = "menus")
+    @Query("select r from Role r join r.users u where u.id = ?1")
+    Set<Role> findWithMenusByUserId(Long id);
+
     /**
      * 解绑角色菜单
      * @param id 菜单ID
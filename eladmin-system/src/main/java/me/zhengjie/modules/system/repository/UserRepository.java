@@ -16,6 +16,7 @@
 package me.zhengjie.modules.system.repository;
 
 import me.zhengjie.modules.system.domain.User;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Modifying;
@@ -31,10 +32,11 @@ import java.util.Set;
 public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificationExecutor<User> {
 
     /**
-     * 根据用户名查询
+     * 根据用户名查询，同时抓取角色、岗位与部门
      * @param username 用户名
      * @return /
      */
+    @EntityGraph(attributePaths = {"roles", "jobs", "dept"})
     User findByUsername(String username);
 
     /**
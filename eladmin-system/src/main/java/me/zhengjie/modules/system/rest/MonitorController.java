@@ -42,4 +42,11 @@ public class MonitorController {
     public ResponseEntity<Object> query(){
         return new ResponseEntity<>(serverService.getServers(),HttpStatus.OK);
     }
+
+    @GetMapping(value = "/history")
+    @ApiOperation("查询服务监控历史")
+    @PreAuthorize("@el.check('monitor:list')")
+    public ResponseEntity<Object> queryHistory(@RequestParam(defaultValue = "60") Integer size){
+        return new ResponseEntity<>(serverService.getHistory(size),HttpStatus.OK);
+    }
 }
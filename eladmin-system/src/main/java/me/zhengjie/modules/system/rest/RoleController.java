@@ -65,7 +65,7 @@ public class RoleController {
     @GetMapping(value = "/download")
     @PreAuthorize("@el.check('role:list')")
     public void download(HttpServletResponse response, RoleQueryCriteria criteria) throws IOException {
-        roleService.download(roleService.queryAll(criteria), response);
+        roleService.download(criteria, response);
     }
 
     @ApiOperation("返回全部的角色")
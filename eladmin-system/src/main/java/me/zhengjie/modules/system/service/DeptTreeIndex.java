@@ -0,0 +1,313 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.modules.system.service;
+
+import cn.hutool.core.util.IdUtil;
+import lombok.extern.slf4j.Slf4j;
+import me.zhengjie.modules.system.domain.Dept;
+import me.zhengjie.modules.system.repository.DeptRepository;
+import me.zhengjie.utils.RedisUtils;
+import me.zhengjie.utils.TransactionUtils;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 部门树内存索引：一次性加载 sys_dept 的 id、pid、enabled，按 id 排序后以数组保存邻接关系，
+ * 子孙、祖先查询均在内存中完成，不再逐层执行 findByPid。
+ * 部门新增、修改、删除在事务提交后增量更新索引，并通过 Redis 通知其他节点重新加载
+ *
+ * @author /
+ */
+@Slf4j
+@Component
+public class DeptTreeIndex implements MessageListener {
+
+    /**
+     * 部门树变更通知频道
+     */
+    public static final String CHANGE_CHANNEL = "dept-tree-change";
+
+    /**
+     * pid 为空时的占位值
+     */
+    private static final long NO_PARENT = Long.MIN_VALUE;
+
+    private final DeptRepository deptRepository;
+    private final RedisUtils redisUtils;
+    private final RedisMessageListenerContainer listenerContainer;
+    /**
+     * 当前节点标识，用于忽略自己发出的变更通知
+     */
+    private final String nodeId = IdUtil.simpleUUID();
+    private volatile Snapshot snapshot;
+
+    public DeptTreeIndex(DeptRepository deptRepository, RedisUtils redisUtils, RedisMessageListenerContainer listenerContainer) {
+        this.deptRepository = deptRepository;
+        this.redisUtils = redisUtils;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANGE_CHANNEL));
+    }
+
+    /**
+     * 获取部门的所有子孙部门ID，不包含自身
+     *
+     * @param id          部门ID
+     * @param onlyEnabled 为 true 时跳过停用的部门及其下级
+     * @return /
+     */
+    public List<Long> getChildren(Long id, boolean onlyEnabled) {
+        Snapshot current = snapshot();
+        int index = current.indexOf(id);
+        List<Long> result = new ArrayList<>();
+        if (index < 0) {
+            return result;
+        }
+        int[] stack = new int[current.ids.length];
+        // 避免脏数据成环时重复遍历
+        boolean[] visited = new boolean[current.ids.length];
+        int top = 0;
+        stack[top++] = index;
+        visited[index] = true;
+        while (top > 0) {
+            int node = stack[--top];
+            for (int i = current.childOffset[node]; i < current.childOffset[node + 1]; i++) {
+                int child = current.children[i];
+                if (visited[child] || (onlyEnabled && !current.enabled[child])) {
+                    continue;
+                }
+                visited[child] = true;
+                result.add(current.ids[child]);
+                stack[top++] = child;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取部门的祖先链，从直接上级到顶级部门
+     *
+     * @param id 部门ID
+     * @return /
+     */
+    public List<Long> getAncestors(Long id) {
+        Snapshot current = snapshot();
+        List<Long> result = new ArrayList<>();
+        int index = current.indexOf(id);
+        // 以部门总数为上限，避免脏数据成环时死循环
+        int limit = current.ids.length;
+        while (index >= 0 && limit-- > 0) {
+            index = current.parent[index];
+            if (index >= 0) {
+                result.add(current.ids[index]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取直接下级部门ID
+     *
+     * @param pid 上级部门ID，为 null 时返回顶级部门
+     * @return /
+     */
+    public List<Long> getDirectChildren(Long pid) {
+        Snapshot current = snapshot();
+        List<Long> result = new ArrayList<>();
+        if (pid == null) {
+            for (int root : current.roots) {
+                result.add(current.ids[root]);
+            }
+            return result;
+        }
+        int index = current.indexOf(pid);
+        if (index >= 0) {
+            for (int i = current.childOffset[index]; i < current.childOffset[index + 1]; i++) {
+                result.add(current.ids[current.children[i]]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 部门是否启用，不存在时返回 false
+     *
+     * @param id 部门ID
+     * @return /
+     */
+    public boolean isEnabled(Long id) {
+        Snapshot current = snapshot();
+        int index = current.indexOf(id);
+        return index >= 0 && current.enabled[index];
+    }
+
+    /**
+     * 新增或修改部门后更新索引，存在事务时在提交后执行
+     *
+     * @param dept /
+     */
+    public void put(Dept dept) {
+        long id = dept.getId();
+        long pid = dept.getPid() == null ? NO_PARENT : dept.getPid();
+        boolean enabled = Boolean.TRUE.equals(dept.getEnabled());
+        TransactionUtils.afterCommit(() -> apply(id, pid, enabled, false));
+    }
+
+    /**
+     * 删除部门后更新索引，存在事务时在提交后执行
+     *
+     * @param id 部门ID
+     */
+    public void remove(Long id) {
+        TransactionUtils.afterCommit(() -> apply(id, NO_PARENT, false, true));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object origin = redisUtils.deserializeMessage(message.getBody());
+        if (!nodeId.equals(origin)) {
+            synchronized (this) {
+                snapshot = null;
+            }
+        }
+    }
+
+    private synchronized void apply(long id, long pid, boolean enabled, boolean delete) {
+        Snapshot current = snapshot;
+        if (current != null) {
+            int n = current.ids.length;
+            int index = current.indexOf(id);
+            int size = delete ? (index >= 0 ? n - 1 : n) : (index >= 0 ? n : n + 1);
+            long[] ids = new long[size];
+            long[] pids = new long[size];
+            boolean[] flags = new boolean[size];
+            int j = 0;
+            for (int i = 0; i < n; i++) {
+                if (i == index) {
+                    continue;
+                }
+                ids[j] = current.ids[i];
+                pids[j] = current.pids[i];
+                flags[j++] = current.enabled[i];
+            }
+            if (!delete) {
+                ids[j] = id;
+                pids[j] = pid;
+                flags[j] = enabled;
+            }
+            snapshot = new Snapshot(ids, pids, flags);
+        }
+        redisUtils.convertAndSend(CHANGE_CHANNEL, nodeId);
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = load();
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Snapshot load() {
+        List<Object[]> nodes = deptRepository.findTreeNodes();
+        int n = nodes.size();
+        long[] ids = new long[n];
+        long[] pids = new long[n];
+        boolean[] enabled = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            Object[] node = nodes.get(i);
+            ids[i] = (Long) node[0];
+            pids[i] = node[1] == null ? NO_PARENT : (Long) node[1];
+            enabled[i] = Boolean.TRUE.equals(node[2]);
+        }
+        log.info("加载部门树索引，部门数量：{}", n);
+        return new Snapshot(ids, pids, enabled);
+    }
+
+    /**
+     * 不可变的索引快照，节点按 id 升序存放，下级关系为 CSR 结构：
+     * 节点 i 的下级为 children[childOffset[i]] ~ children[childOffset[i + 1] - 1]
+     */
+    private static final class Snapshot {
+
+        private final long[] ids;
+        private final long[] pids;
+        private final boolean[] enabled;
+        private final int[] parent;
+        private final int[] childOffset;
+        private final int[] children;
+        private final int[] roots;
+
+        private Snapshot(long[] rawIds, long[] rawPids, boolean[] rawEnabled) {
+            int n = rawIds.length;
+            ids = rawIds.clone();
+            Arrays.sort(ids);
+            pids = new long[n];
+            enabled = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                int pos = Arrays.binarySearch(ids, rawIds[i]);
+                pids[pos] = rawPids[i];
+                enabled[pos] = rawEnabled[i];
+            }
+            parent = new int[n];
+            childOffset = new int[n + 1];
+            int rootCount = 0;
+            for (int i = 0; i < n; i++) {
+                parent[i] = pids[i] == NO_PARENT ? -1 : Math.max(Arrays.binarySearch(ids, pids[i]), -1);
+                if (parent[i] >= 0) {
+                    childOffset[parent[i] + 1]++;
+                } else if (pids[i] == NO_PARENT) {
+                    rootCount++;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                childOffset[i + 1] += childOffset[i];
+            }
+            children = new int[childOffset[n]];
+            roots = new int[rootCount];
+            int[] cursor = Arrays.copyOf(childOffset, n);
+            int r = 0;
+            for (int i = 0; i < n; i++) {
+                if (parent[i] >= 0) {
+                    children[cursor[parent[i]]++] = i;
+                } else if (pids[i] == NO_PARENT) {
+                    roots[r++] = i;
+                }
+            }
+        }
+
+        private int indexOf(Long id) {
+            return id == null ? -1 : Math.max(Arrays.binarySearch(ids, id), -1);
+        }
+    }
+}
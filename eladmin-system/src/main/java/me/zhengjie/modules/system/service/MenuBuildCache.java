@@ -0,0 +1,97 @@
+/*
+ *  Copyright 2019-2020 Zheng Jie
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package me.zhengjie.modules.system.service;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import me.zhengjie.utils.LocalCache;
+import me.zhengjie.utils.RedisUtils;
+import me.zhengjie.utils.TransactionUtils;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * 前端导航菜单缓存：按角色组合缓存序列化好的 JSON 字节，拥有相同角色的用户共享同一份结果。
+ * 菜单或角色菜单变更时清空缓存，同时通过 Redis 通知其他节点
+ *
+ * @author /
+ */
+@Component
+public class MenuBuildCache implements MessageListener {
+
+    /**
+     * 菜单变更通知频道
+     */
+    public static final String CHANGE_CHANNEL = "menu-build-change";
+
+    /**
+     * 缓存的角色组合数量上限
+     */
+    private static final int MAX_SIZE = 512;
+
+    private final RedisUtils redisUtils;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final LocalCache<String, byte[]> cache = new LocalCache<>(MAX_SIZE, 0);
+
+    public MenuBuildCache(RedisUtils redisUtils, RedisMessageListenerContainer listenerContainer) {
+        this.redisUtils = redisUtils;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANGE_CHANNEL));
+    }
+
+    /**
+     * 获取角色组合对应的菜单 JSON
+     *
+     * @param roleIds  角色ID
+     * @param renderer 未命中时根据排序后的角色ID生成菜单
+     * @return UTF-8 编码的 JSON
+     */
+    public byte[] get(Collection<Long> roleIds, Function<TreeSet<Long>, Object> renderer) {
+        TreeSet<Long> sortedIds = new TreeSet<>(roleIds);
+        // 生成过程中菜单发生变更时，结果不写入缓存
+        return cache.get(sortedIds.toString(),
+                key -> JSON.toJSONBytes(renderer.apply(sortedIds), SerializerFeature.DisableCircularReferenceDetect));
+    }
+
+    /**
+     * 菜单或角色菜单变更后调用，存在事务时在提交后通知其他节点
+     */
+    public void changed() {
+        cache.invalidateAll();
+        // 提交前其他线程可能读到了旧数据并写入缓存，提交后再清空一次
+        TransactionUtils.afterCommit(() -> {
+            cache.invalidateAll();
+            redisUtils.convertAndSend(CHANGE_CHANNEL, cache.version());
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        cache.invalidateAll();
+    }
+}
@@ -122,4 +122,11 @@ public interface MenuService {
      * @return /
      */
     List<MenuDto> findByUser(Long currentUserId);
+
+    /**
+     * 根据角色获取菜单，不包含按钮
+     * @param roleIds 角色ID
+     * @return /
+     */
+    List<MenuDto> findByRoleIds(Set<Long> roleIds);
 }
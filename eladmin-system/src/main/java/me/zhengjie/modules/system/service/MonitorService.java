@@ -15,6 +15,7 @@
  */
 package me.zhengjie.modules.system.service;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -28,4 +29,11 @@ public interface MonitorService {
     * @return Map<String,Object>
     */
     Map<String,Object> getServers();
+
+    /**
+    * 查询最近的监控数据，用于绘制趋势图，按时间先后排列
+    * @param size 数量
+    * @return /
+    */
+    List<Map<String,Object>> getHistory(int size);
 }
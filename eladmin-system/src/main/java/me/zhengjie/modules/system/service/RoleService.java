@@ -107,12 +107,12 @@ public interface RoleService {
     List<RoleDto> queryAll(RoleQueryCriteria criteria);
 
     /**
-     * 导出数据
-     * @param queryAll 待导出的数据
+     * 导出数据，分段查询并流式写出
+     * @param criteria 查询条件
      * @param response /
      * @throws IOException /
      */
-    void download(List<RoleDto> queryAll, HttpServletResponse response) throws IOException;
+    void download(RoleQueryCriteria criteria, HttpServletResponse response) throws IOException;
 
     /**
      * 获取用户权限信息
@@ -101,12 +101,12 @@ public interface UserService {
     List<UserDto> queryAll(UserQueryCriteria criteria);
 
     /**
-     * 导出数据
-     * @param queryAll 待导出的数据
+     * 导出数据，分段查询并流式写出
+     * @param criteria 查询条件
      * @param response /
      * @throws IOException /
      */
-    void download(List<UserDto> queryAll, HttpServletResponse response) throws IOException;
+    void download(UserQueryCriteria criteria, HttpServletResponse response) throws IOException;
 
     /**
      * 用户自助修改资料
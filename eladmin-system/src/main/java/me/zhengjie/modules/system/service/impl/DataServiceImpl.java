@@ -19,6 +19,7 @@ import lombok.RequiredArgsConstructor;
 import me.zhengjie.modules.system.domain.Dept;
 import me.zhengjie.modules.system.service.DataService;
 import me.zhengjie.modules.system.service.DeptService;
+import me.zhengjie.modules.system.service.DeptTreeIndex;
 import me.zhengjie.modules.system.service.RoleService;
 import me.zhengjie.modules.system.service.dto.RoleSmallDto;
 import me.zhengjie.modules.system.service.dto.UserDto;
@@ -41,6 +42,7 @@ public class DataServiceImpl implements DataService {
 
     private final RoleService roleService;
     private final DeptService deptService;
+    private final DeptTreeIndex deptTreeIndex;
 
     /**
      * 用户角色改变时需清理缓存
@@ -83,12 +85,8 @@ public class DataServiceImpl implements DataService {
         for (Dept dept : depts) {
             // 获取由depts对象集合对应的部门id集合
             deptIds.add(dept.getId());
-            // 通过部门id来查询部门pid获取所有的depts对象集合
-            List<Dept> deptChildren = deptService.findByPid(dept.getId());
-            if (deptChildren != null && deptChildren.size() != 0) {
-                // 通过根据pid查出的deptChildren集合来获取部门id，并存到deptIds中
-                deptIds.addAll(deptService.getDeptChildren(deptChildren));
-            }
+            // 通过部门树索引获取所有启用的下级部门id，并存到deptIds中
+            deptIds.addAll(deptTreeIndex.getChildren(dept.getId(), true));
         }
         // 返回的是部门id集合
         return deptIds;
@@ -19,6 +19,7 @@ import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.core.util.ObjectUtil;
 import lombok.RequiredArgsConstructor;
 import me.zhengjie.exception.BadRequestException;
+import me.zhengjie.modules.security.service.UserCacheClean;
 import me.zhengjie.modules.system.domain.Dept;
 import me.zhengjie.modules.system.domain.User;
 import me.zhengjie.modules.system.repository.RoleRepository;
@@ -28,6 +29,7 @@ import me.zhengjie.modules.system.service.dto.DeptQueryCriteria;
 import me.zhengjie.utils.*;
 import me.zhengjie.modules.system.repository.DeptRepository;
 import me.zhengjie.modules.system.service.DeptService;
+import me.zhengjie.modules.system.service.DeptTreeIndex;
 import me.zhengjie.modules.system.service.mapstruct.DeptMapper;
 import me.zhengjie.utils.enums.DataScopeEnum;
 import org.springframework.cache.annotation.CacheConfig;
@@ -55,6 +57,10 @@ public class DeptServiceImpl implements DeptService {
     private final UserRepository userRepository;
     private final RedisUtils redisUtils;
     private final RoleRepository roleRepository;
+    private final DeptTreeIndex deptTreeIndex;
+    private final UserCacheClean userCacheClean;
+
+    private static final Comparator<DeptDto> DEPT_SORT = Comparator.comparing(DeptDto::getDeptSort, Comparator.nullsLast(Comparator.naturalOrder()));
 
     @Override
     public List<DeptDto> queryAll(DeptQueryCriteria criteria, Boolean isQuery) throws Exception {
@@ -109,6 +115,7 @@ public class DeptServiceImpl implements DeptService {
     @Transactional(rollbackFor = Exception.class)
     public void create(Dept resources) {
         deptRepository.save(resources);
+        deptTreeIndex.put(resources);
         // 计算子节点数目
         resources.setSubCount(0);
         // 清理缓存
@@ -130,6 +137,7 @@ public class DeptServiceImpl implements DeptService {
         ValidationUtil.isNull( dept.getId(),"Dept","id",resources.getId());
         resources.setId(dept.getId());
         deptRepository.save(resources);
+        deptTreeIndex.put(resources);
         // 更新父节点中子节点数目
         updateSubCnt(oldPid);
         updateSubCnt(newPid);
@@ -144,6 +152,7 @@ public class DeptServiceImpl implements DeptService {
             // 清理缓存
             delCaches(deptDto.getId());
             deptRepository.deleteById(deptDto.getId());
+            deptTreeIndex.remove(deptDto.getId());
             updateSubCnt(deptDto.getPid());
         }
     }
@@ -163,12 +172,13 @@ public class DeptServiceImpl implements DeptService {
 
     @Override
     public Set<DeptDto> getDeleteDepts(List<Dept> menuList, Set<DeptDto> deptDtos) {
+        Set<Long> ids = new HashSet<>();
         for (Dept dept : menuList) {
             deptDtos.add(deptMapper.toDto(dept));
-            List<Dept> depts = deptRepository.findByPid(dept.getId());
-            if(depts!=null && depts.size()!=0){
-                getDeleteDepts(depts, deptDtos);
-            }
+            ids.addAll(deptTreeIndex.getChildren(dept.getId(), false));
+        }
+        if (!ids.isEmpty()) {
+            deptDtos.addAll(deptMapper.toDto(deptRepository.findAllById(ids)));
         }
         return deptDtos;
     }
@@ -176,59 +186,41 @@ public class DeptServiceImpl implements DeptService {
     @Override
     public List<Long> getDeptChildren(List<Dept> deptList) {
         List<Long> list = new ArrayList<>();
-        deptList.forEach(dept -> {
-                    if (dept!=null && dept.getEnabled()) {
-                        List<Dept> depts = deptRepository.findByPid(dept.getId());
-                        if (depts.size() != 0) {
-                            list.addAll(getDeptChildren(depts));
-                        }
-                        list.add(dept.getId());
-                    }
-                }
-        );
+        for (Dept dept : deptList) {
+            if (dept != null && dept.getEnabled()) {
+                list.addAll(deptTreeIndex.getChildren(dept.getId(), true));
+                list.add(dept.getId());
+            }
+        }
         return list;
     }
 
     @Override
     public List<DeptDto> getSuperior(DeptDto deptDto, List<Dept> depts) {
-        if(deptDto.getPid() == null){
-            depts.addAll(deptRepository.findByPidIsNull());
-            return deptMapper.toDto(depts);
+        // 从当前部门逐级向上，收集每一级的同级部门，最后是顶级部门
+        List<Long> ids = new ArrayList<>();
+        if (deptDto.getPid() != null) {
+            // 祖先链：直接上级 -> 顶级部门，每一级的同级部门即其上级的直接下级
+            for (Long ancestor : deptTreeIndex.getAncestors(deptDto.getId())) {
+                ids.addAll(deptTreeIndex.getDirectChildren(ancestor));
+            }
+        }
+        ids.addAll(deptTreeIndex.getDirectChildren(null));
+        Map<Long, Dept> deptMap = deptRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Dept::getId, dept -> dept));
+        for (Long id : ids) {
+            Dept dept = deptMap.get(id);
+            if (dept != null) {
+                depts.add(dept);
+            }
         }
-        depts.addAll(deptRepository.findByPid(deptDto.getPid()));
-        return getSuperior(findById(deptDto.getPid()), depts);
+        return deptMapper.toDto(depts);
     }
 
     @Override
     public Object buildTree(List<DeptDto> deptDtos) {
-        Set<DeptDto> trees = new LinkedHashSet<>();
-        Set<DeptDto> depts= new LinkedHashSet<>();
-        List<String> deptNames = deptDtos.stream().map(DeptDto::getName).collect(Collectors.toList());
-        boolean isChild;
-        for (DeptDto deptDTO : deptDtos) {
-            isChild = false;
-            if (deptDTO.getPid() == null) {
-                trees.add(deptDTO);
-            }
-            for (DeptDto it : deptDtos) {
-                if (it.getPid() != null && deptDTO.getId().equals(it.getPid())) {
-                    isChild = true;
-                    if (deptDTO.getChildren() == null) {
-                        deptDTO.setChildren(new ArrayList<>());
-                    }
-                    deptDTO.getChildren().add(it);
-                }
-            }
-            if(isChild) {
-                depts.add(deptDTO);
-            } else if(deptDTO.getPid() != null &&  !deptNames.contains(findById(deptDTO.getPid()).getName())) {
-                depts.add(deptDTO);
-            }
-        }
-
-        if (CollectionUtil.isEmpty(trees)) {
-            trees = depts;
-        }
+        // 按条件查询得到的部分子树，以上级不在结果中的部门为根
+        List<DeptDto> trees = TreeUtil.build(deptDtos, DeptDto::getId, DeptDto::getPid, DeptDto::setChildren, DEPT_SORT);
         Map<String,Object> map = new HashMap<>(2);
         map.put("totalElements",deptDtos.size());
         map.put("content",CollectionUtil.isEmpty(trees)? deptDtos :trees);
@@ -254,20 +246,7 @@ public class DeptServiceImpl implements DeptService {
     }
 
     private List<DeptDto> deduplication(List<DeptDto> list) {
-        List<DeptDto> deptDtos = new ArrayList<>();
-        for (DeptDto deptDto : list) {
-            boolean flag = true;
-            for (DeptDto dto : list) {
-                if (dto.getId().equals(deptDto.getPid())) {
-                    flag = false;
-                    break;
-                }
-            }
-            if (flag){
-                deptDtos.add(deptDto);
-            }
-        }
-        return deptDtos;
+        return TreeUtil.topNodes(list, DeptDto::getId, DeptDto::getPid);
     }
 
     /**
@@ -278,6 +257,8 @@ public class DeptServiceImpl implements DeptService {
         List<User> users = userRepository.findByRoleDeptId(id);
         // 删除数据权限
         redisUtils.delByKeys(CacheKey.DATA_USER, users.stream().map(User::getId).collect(Collectors.toSet()));
+        // 登录信息缓存中保存了数据权限，同时失效
+        users.forEach(user -> userCacheClean.cleanUserCache(user.getUsername()));
         redisUtils.del(CacheKey.DEPT_ID + id);
     }
 }
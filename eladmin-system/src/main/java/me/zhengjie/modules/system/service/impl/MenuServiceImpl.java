@@ -18,6 +18,7 @@ package me.zhengjie.modules.system.service.impl;
 import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.core.util.ObjectUtil;
 import lombok.RequiredArgsConstructor;
+import me.zhengjie.modules.security.service.UserCacheClean;
 import me.zhengjie.modules.system.domain.Menu;
 import me.zhengjie.modules.system.domain.Role;
 import me.zhengjie.modules.system.domain.User;
@@ -27,6 +28,7 @@ import me.zhengjie.exception.BadRequestException;
 import me.zhengjie.exception.EntityExistException;
 import me.zhengjie.modules.system.repository.MenuRepository;
 import me.zhengjie.modules.system.repository.UserRepository;
+import me.zhengjie.modules.system.service.MenuBuildCache;
 import me.zhengjie.modules.system.service.MenuService;
 import me.zhengjie.modules.system.service.RoleService;
 import me.zhengjie.modules.system.service.dto.MenuDto;
@@ -58,6 +60,10 @@ public class MenuServiceImpl implements MenuService {
     private final MenuMapper menuMapper;
     private final RoleService roleService;
     private final RedisUtils redisUtils;
+    private final UserCacheClean userCacheClean;
+    private final MenuBuildCache menuBuildCache;
+
+    private static final Comparator<MenuDto> MENU_SORT = Comparator.comparing(MenuDto::getMenuSort, Comparator.nullsLast(Comparator.naturalOrder()));
 
     @Override
     public List<MenuDto> queryAll(MenuQueryCriteria criteria, Boolean isQuery) throws Exception {
@@ -99,6 +105,14 @@ public class MenuServiceImpl implements MenuService {
     public List<MenuDto> findByUser(Long currentUserId) {
         List<RoleSmallDto> roles = roleService.findByUsersId(currentUserId);
         Set<Long> roleIds = roles.stream().map(RoleSmallDto::getId).collect(Collectors.toSet());
+        return findByRoleIds(roleIds);
+    }
+
+    @Override
+    public List<MenuDto> findByRoleIds(Set<Long> roleIds) {
+        if (roleIds.isEmpty()) {
+            return new ArrayList<>();
+        }
         LinkedHashSet<Menu> menus = menuRepository.findByRoleIdsAndTypeNot(roleIds, 2);
         return menus.stream().map(menuMapper::toDto).collect(Collectors.toList());
     }
@@ -128,6 +142,7 @@ public class MenuServiceImpl implements MenuService {
         resources.setSubCount(0);
         // 更新父节点菜单数目
         updateSubCnt(resources.getPid());
+        menuBuildCache.changed();
     }
 
     @Override
@@ -232,26 +247,7 @@ public class MenuServiceImpl implements MenuService {
 
     @Override
     public List<MenuDto> buildTree(List<MenuDto> menuDtos) {
-        List<MenuDto> trees = new ArrayList<>();
-        Set<Long> ids = new HashSet<>();
-        for (MenuDto menuDTO : menuDtos) {
-            if (menuDTO.getPid() == null) {
-                trees.add(menuDTO);
-            }
-            for (MenuDto it : menuDtos) {
-                if (menuDTO.getId().equals(it.getPid())) {
-                    if (menuDTO.getChildren() == null) {
-                        menuDTO.setChildren(new ArrayList<>());
-                    }
-                    menuDTO.getChildren().add(it);
-                    ids.add(it.getId());
-                }
-            }
-        }
-        if(trees.size() == 0){
-            trees = menuDtos.stream().filter(s -> !ids.contains(s.getId())).collect(Collectors.toList());
-        }
-        return trees;
+        return TreeUtil.build(menuDtos, MenuDto::getId, MenuDto::getPid, MenuDto::setChildren, MENU_SORT);
     }
 
     @Override
@@ -345,7 +341,10 @@ public class MenuServiceImpl implements MenuService {
     public void delCaches(Long id){
         List<User> users = userRepository.findByMenuId(id);
         redisUtils.del(CacheKey.MENU_ID + id);
-        redisUtils.delByKeys(CacheKey.MENU_USER, users.stream().map(User::getId).collect(Collectors.toSet()));
+        // 菜单的权限标识可能变化，同时清理用户的权限缓存
+        redisUtils.delByKeys(Arrays.asList(CacheKey.MENU_USER, CacheKey.ROLE_AUTH), users.stream().map(User::getId).collect(Collectors.toSet()));
+        users.forEach(item -> userCacheClean.cleanUserCache(item.getUsername()));
+        menuBuildCache.changed();
         // 清除 Role 缓存
         List<Role> roles = roleService.findInMenuId(new ArrayList<Long>(){{
             add(id);
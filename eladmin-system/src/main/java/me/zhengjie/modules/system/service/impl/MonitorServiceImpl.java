@@ -17,7 +17,8 @@ package me.zhengjie.modules.system.service.impl;
 
 import cn.hutool.core.date.BetweenFormater;
 import cn.hutool.core.date.DateUtil;
-import me.zhengjie.exception.BadRequestException;
+import lombok.extern.slf4j.Slf4j;
+import me.zhengjie.config.MonitorProperties;
 import me.zhengjie.modules.system.service.MonitorService;
 import me.zhengjie.utils.ElAdminConstant;
 import me.zhengjie.utils.FileUtil;
@@ -29,49 +30,141 @@ import oshi.software.os.FileSystem;
 import oshi.software.os.OSFileStore;
 import oshi.software.os.OperatingSystem;
 import oshi.util.FormatUtil;
-import oshi.util.Util;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.lang.management.ManagementFactory;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
+ * 服务监控：后台线程按配置的间隔采集 CPU、内存、交换区、磁盘与 JVM 信息，
+ * 快照写入环形缓冲区，查询时直接返回最新快照，不再阻塞请求线程。
+ * 只有采样线程写入缓冲区，读取时无需加锁
 * @author Zheng Jie
 * @date 2020-05-02
 */
+@Slf4j
 @Service
 public class MonitorServiceImpl implements MonitorService {
 
     private final DecimalFormat df = new DecimalFormat("0.00");
+    private final MonitorProperties properties;
+    private final SystemInfo si = new SystemInfo();
+    private final AtomicReferenceArray<Snapshot> snapshots;
+    /**
+     * 已写入的快照数量，最新快照位于 (sequence - 1) % 容量
+     */
+    private final AtomicLong sequence = new AtomicLong();
+    private ScheduledExecutorService sampler;
+    private long[] prevTicks;
+
+    public MonitorServiceImpl(MonitorProperties properties) {
+        this.properties = properties;
+        this.snapshots = new AtomicReferenceArray<>(Math.max(properties.getHistory(), 1));
+    }
+
+    @PostConstruct
+    public void start() {
+        prevTicks = si.getHardware().getProcessor().getSystemCpuLoadTicks();
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "el-monitor-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 第一次采样需要与初始 CPU 计数间隔一段时间，否则 CPU 使用率没有意义
+        long interval = Math.max(properties.getInterval(), 1000);
+        sampler.scheduleWithFixedDelay(this::sampleQuietly, 1000, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+        }
+    }
 
     @Override
     public Map<String,Object> getServers(){
-        Map<String, Object> resultMap = new LinkedHashMap<>(8);
+        Snapshot snapshot = latest();
+        if (snapshot == null) {
+            // 应用刚启动还没有快照时同步采样一次
+            snapshot = sample();
+        }
+        return snapshot.servers;
+    }
+
+    @Override
+    public List<Map<String, Object>> getHistory(int size) {
+        long end = sequence.get();
+        int capacity = snapshots.length();
+        long start = Math.max(end - Math.min(Math.max(size, 0), capacity), 0);
+        List<Map<String, Object>> history = new ArrayList<>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            Snapshot snapshot = snapshots.get((int) (i % capacity));
+            // 读取过程中被新快照覆盖的位置会晚于 end，跳过以保持时间顺序
+            if (snapshot != null && snapshot.sequence == i) {
+                history.add(snapshot.point);
+            }
+        }
+        return history;
+    }
+
+    private Snapshot latest() {
+        long current = sequence.get();
+        return current == 0 ? null : snapshots.get((int) ((current - 1) % snapshots.length()));
+    }
+
+    private void sampleQuietly() {
         try {
-            SystemInfo si = new SystemInfo();
-            OperatingSystem os = si.getOperatingSystem();
-            HardwareAbstractionLayer hal = si.getHardware();
-            // 系统信息
-            resultMap.put("sys", getSystemInfo(os));
-            // cpu 信息
-            resultMap.put("cpu", getCpuInfo(hal.getProcessor()));
-            // 内存信息
-            resultMap.put("memory", getMemoryInfo(hal.getMemory()));
-            // 交换区信息
-            resultMap.put("swap", getSwapInfo(hal.getMemory()));
-            // 磁盘
-            resultMap.put("disk", getDiskInfo(os));
-            resultMap.put("time", DateUtil.format(new Date(), "HH:mm:ss"));
+            sample();
         } catch (Exception e) {
-            e.printStackTrace();
+            // 异常不能抛出，否则后续采样会被取消
+            log.error("服务监控采样失败", e);
         }
-        return resultMap;
+    }
+
+    /**
+     * 采集一次快照并写入环形缓冲区
+     * @return /
+     */
+    private synchronized Snapshot sample() {
+        Map<String, Object> resultMap = new LinkedHashMap<>(8);
+        Map<String, Object> point = new LinkedHashMap<>(8);
+        OperatingSystem os = si.getOperatingSystem();
+        HardwareAbstractionLayer hal = si.getHardware();
+        Date now = new Date();
+        String time = DateUtil.format(now, "HH:mm:ss");
+        point.put("time", time);
+        // 系统信息
+        resultMap.put("sys", getSystemInfo(os));
+        // cpu 信息
+        resultMap.put("cpu", getCpuInfo(hal.getProcessor(), point));
+        // 内存信息
+        resultMap.put("memory", getMemoryInfo(hal.getMemory(), point));
+        // 交换区信息
+        resultMap.put("swap", getSwapInfo(hal.getMemory(), point));
+        // 磁盘
+        resultMap.put("disk", getDiskInfo(os, point));
+        // jvm
+        resultMap.put("jvm", getJvmInfo(point));
+        resultMap.put("time", time);
+        long current = sequence.get();
+        Snapshot snapshot = new Snapshot(current, Collections.unmodifiableMap(resultMap), Collections.unmodifiableMap(point));
+        snapshots.set((int) (current % snapshots.length()), snapshot);
+        sequence.set(current + 1);
+        return snapshot;
     }
 
     /**
      * 获取磁盘信息
      * @return /
      */
-    private Map<String,Object> getDiskInfo(OperatingSystem os) {
+    private Map<String,Object> getDiskInfo(OperatingSystem os, Map<String, Object> point) {
         Map<String,Object> diskInfo = new LinkedHashMap<>();
         FileSystem fileSystem = os.getFileSystem();
         List<OSFileStore> fsArray = fileSystem.getFileStores();
@@ -97,6 +190,7 @@ public class MonitorServiceImpl implements MonitorService {
         } else {
             diskInfo.put("usageRate", 0);
         }
+        point.put("disk", percent(used, total));
         return diskInfo;
     }
 
@@ -105,7 +199,7 @@ public class MonitorServiceImpl implements MonitorService {
      * @param memory /
      * @return /
      */
-    private Map<String,Object> getSwapInfo(GlobalMemory memory) {
+    private Map<String,Object> getSwapInfo(GlobalMemory memory, Map<String, Object> point) {
         Map<String,Object> swapInfo = new LinkedHashMap<>();
         VirtualMemory virtualMemory = memory.getVirtualMemory();
         long total = virtualMemory.getSwapTotal();
@@ -118,6 +212,7 @@ public class MonitorServiceImpl implements MonitorService {
         } else {
             swapInfo.put("usageRate", df.format(used/(double)total * 100));
         }
+        point.put("swap", percent(used, total));
         return swapInfo;
     }
 
@@ -126,21 +221,43 @@ public class MonitorServiceImpl implements MonitorService {
      * @param memory /
      * @return /
      */
-    private Map<String,Object> getMemoryInfo(GlobalMemory memory) {
+    private Map<String,Object> getMemoryInfo(GlobalMemory memory, Map<String, Object> point) {
         Map<String,Object> memoryInfo = new LinkedHashMap<>();
         memoryInfo.put("total", FormatUtil.formatBytes(memory.getTotal()));
         memoryInfo.put("available", FormatUtil.formatBytes(memory.getAvailable()));
         memoryInfo.put("used", FormatUtil.formatBytes(memory.getTotal() - memory.getAvailable()));
         memoryInfo.put("usageRate", df.format((memory.getTotal() - memory.getAvailable())/(double)memory.getTotal() * 100));
+        point.put("memory", percent(memory.getTotal() - memory.getAvailable(), memory.getTotal()));
         return memoryInfo;
     }
 
     /**
-     * 获取Cpu相关信息
+     * 获取JVM信息
+     * @return /
+     */
+    private Map<String,Object> getJvmInfo(Map<String, Object> point) {
+        Map<String,Object> jvmInfo = new LinkedHashMap<>();
+        Runtime runtime = Runtime.getRuntime();
+        long total = runtime.totalMemory();
+        long max = runtime.maxMemory();
+        long used = total - runtime.freeMemory();
+        jvmInfo.put("name", System.getProperty("java.vm.name"));
+        jvmInfo.put("version", System.getProperty("java.version"));
+        jvmInfo.put("total", FormatUtil.formatBytes(total));
+        jvmInfo.put("max", FormatUtil.formatBytes(max));
+        jvmInfo.put("used", FormatUtil.formatBytes(used));
+        jvmInfo.put("usageRate", df.format(used/(double)max * 100));
+        jvmInfo.put("threads", ManagementFactory.getThreadMXBean().getThreadCount());
+        point.put("jvm", percent(used, max));
+        return jvmInfo;
+    }
+
+    /**
+     * 获取Cpu相关信息，使用率按与上一次采样之间的计数差值计算
      * @param processor /
      * @return /
      */
-    private Map<String,Object> getCpuInfo(CentralProcessor processor) {
+    private Map<String,Object> getCpuInfo(CentralProcessor processor, Map<String, Object> point) {
         Map<String,Object> cpuInfo = new LinkedHashMap<>();
         cpuInfo.put("name", processor.getProcessorIdentifier().getName());
         cpuInfo.put("package", processor.getPhysicalPackageCount() + "个物理CPU");
@@ -148,9 +265,6 @@ public class MonitorServiceImpl implements MonitorService {
         cpuInfo.put("coreNumber", processor.getPhysicalProcessorCount());
         cpuInfo.put("logic", processor.getLogicalProcessorCount() + "个逻辑CPU");
         // CPU信息
-        long[] prevTicks = processor.getSystemCpuLoadTicks();
-        // 等待1秒...
-        Util.sleep(1000);
         long[] ticks = processor.getSystemCpuLoadTicks();
         long user = ticks[CentralProcessor.TickType.USER.getIndex()] - prevTicks[CentralProcessor.TickType.USER.getIndex()];
         long nice = ticks[CentralProcessor.TickType.NICE.getIndex()] - prevTicks[CentralProcessor.TickType.NICE.getIndex()];
@@ -160,9 +274,16 @@ public class MonitorServiceImpl implements MonitorService {
         long irq = ticks[CentralProcessor.TickType.IRQ.getIndex()] - prevTicks[CentralProcessor.TickType.IRQ.getIndex()];
         long softirq = ticks[CentralProcessor.TickType.SOFTIRQ.getIndex()] - prevTicks[CentralProcessor.TickType.SOFTIRQ.getIndex()];
         long steal = ticks[CentralProcessor.TickType.STEAL.getIndex()] - prevTicks[CentralProcessor.TickType.STEAL.getIndex()];
+        prevTicks = ticks;
         long totalCpu = user + nice + sys + idle + iowait + irq + softirq + steal;
-        cpuInfo.put("used", df.format(100d * user / totalCpu + 100d * sys / totalCpu));
-        cpuInfo.put("idle", df.format(100d * idle / totalCpu));
+        if (totalCpu > 0) {
+            cpuInfo.put("used", df.format(100d * user / totalCpu + 100d * sys / totalCpu));
+            cpuInfo.put("idle", df.format(100d * idle / totalCpu));
+        } else {
+            cpuInfo.put("used", df.format(0));
+            cpuInfo.put("idle", df.format(100));
+        }
+        point.put("cpu", percent(user + sys, totalCpu));
         return cpuInfo;
     }
 
@@ -184,4 +305,27 @@ public class MonitorServiceImpl implements MonitorService {
         systemInfo.put("ip", StringUtils.getLocalIp());
         return systemInfo;
     }
+
+    /**
+     * 百分比，保留两位小数
+     */
+    private static double percent(long used, long total) {
+        return total > 0 ? Math.round(used * 10000d / total) / 100d : 0;
+    }
+
+    /**
+     * 一次采样的结果，创建后不再修改
+     */
+    private static class Snapshot {
+
+        private final long sequence;
+        private final Map<String, Object> servers;
+        private final Map<String, Object> point;
+
+        private Snapshot(long sequence, Map<String, Object> servers, Map<String, Object> point) {
+            this.sequence = sequence;
+            this.servers = servers;
+            this.point = point;
+        }
+    }
 }
@@ -25,6 +25,7 @@ import me.zhengjie.exception.EntityExistException;
 import me.zhengjie.modules.system.domain.User;
 import me.zhengjie.modules.system.repository.RoleRepository;
 import me.zhengjie.modules.system.repository.UserRepository;
+import me.zhengjie.modules.system.service.MenuBuildCache;
 import me.zhengjie.modules.system.service.RoleService;
 import me.zhengjie.modules.system.service.dto.RoleDto;
 import me.zhengjie.modules.system.service.dto.RoleQueryCriteria;
@@ -43,6 +44,7 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.*;
@@ -63,6 +65,8 @@ public class RoleServiceImpl implements RoleService {
     private final RedisUtils redisUtils;
     private final UserRepository userRepository;
     private final UserCacheClean userCacheClean;
+    private final MenuBuildCache menuBuildCache;
+    private final EntityManager entityManager;
 
     @Override
     public List<RoleDto> queryAll() {
@@ -132,6 +136,7 @@ public class RoleServiceImpl implements RoleService {
         role.setMenus(resources.getMenus());
         delCaches(resources.getId(), users);
         roleRepository.save(role);
+        menuBuildCache.changed();
     }
 
     @Override
@@ -178,7 +183,7 @@ public class RoleServiceImpl implements RoleService {
             return permissions.stream().map(SimpleGrantedAuthority::new)
                     .collect(Collectors.toList());
         }
-        Set<Role> roles = roleRepository.findByUserId(user.getId());
+        Set<Role> roles = roleRepository.findWithMenusByUserId(user.getId());
         permissions = roles.stream().flatMap(role -> role.getMenus().stream())
                 .filter(menu -> StringUtils.isNotBlank(menu.getPermission()))
                 .map(Menu::getPermission).collect(Collectors.toSet());
@@ -187,17 +192,16 @@ public class RoleServiceImpl implements RoleService {
     }
 
     @Override
-    public void download(List<RoleDto> roles, HttpServletResponse response) throws IOException {
-        List<Map<String, Object>> list = new ArrayList<>();
-        for (RoleDto role : roles) {
+    public void download(RoleQueryCriteria criteria, HttpServletResponse response) throws IOException {
+        ChunkedQuery<Role> roles = ChunkedQuery.of(entityManager, Role.class, (root, criteriaQuery, criteriaBuilder) -> QueryHelp.getPredicate(root, criteria, criteriaBuilder));
+        FileUtil.downloadExcel(roles, role -> {
             Map<String, Object> map = new LinkedHashMap<>();
             map.put("角色名称", role.getName());
             map.put("角色级别", role.getLevel());
             map.put("描述", role.getDescription());
             map.put("创建日期", role.getCreateTime());
-            list.add(map);
-        }
-        FileUtil.downloadExcel(list, response);
+            return map;
+        }, response);
     }
 
     @Override
@@ -221,9 +225,7 @@ public class RoleServiceImpl implements RoleService {
         if (CollectionUtil.isNotEmpty(users)) {
             users.forEach(item -> userCacheClean.cleanUserCache(item.getUsername()));
             Set<Long> userIds = users.stream().map(User::getId).collect(Collectors.toSet());
-            redisUtils.delByKeys(CacheKey.DATA_USER, userIds);
-            redisUtils.delByKeys(CacheKey.MENU_USER, userIds);
-            redisUtils.delByKeys(CacheKey.ROLE_AUTH, userIds);
+            redisUtils.delByKeys(Arrays.asList(CacheKey.DATA_USER, CacheKey.MENU_USER, CacheKey.ROLE_AUTH), userIds);
         }
         redisUtils.del(CacheKey.ROLE_ID + id);
     }
@@ -38,6 +38,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
+import javax.persistence.EntityManager;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.constraints.NotBlank;
 import java.io.File;
@@ -60,16 +61,24 @@ public class UserServiceImpl implements UserService {
     private final RedisUtils redisUtils;
     private final UserCacheClean userCacheClean;
     private final OnlineUserService onlineUserService;
+    private final EntityManager entityManager;
 
     @Override
     public Object queryAll(UserQueryCriteria criteria, Pageable pageable) {
-        Page<User> page = userRepository.findAll((root, criteriaQuery, criteriaBuilder) -> QueryHelp.getPredicate(root, criteria, criteriaBuilder), pageable);
+        // 部门随分页查询一并抓取，角色与岗位由 @BatchSize 按页批量加载
+        Page<User> page = userRepository.findAll((root, criteriaQuery, criteriaBuilder) -> {
+            QueryHelp.fetch(root, criteriaQuery, "dept");
+            return QueryHelp.getPredicate(root, criteria, criteriaBuilder);
+        }, pageable);
         return PageUtil.toPage(page.map(userMapper::toDto));
     }
 
     @Override
     public List<UserDto> queryAll(UserQueryCriteria criteria) {
-        List<User> users = userRepository.findAll((root, criteriaQuery, criteriaBuilder) -> QueryHelp.getPredicate(root, criteria, criteriaBuilder));
+        List<User> users = userRepository.findAll((root, criteriaQuery, criteriaBuilder) -> {
+            QueryHelp.fetch(root, criteriaQuery, "dept");
+            return QueryHelp.getPredicate(root, criteria, criteriaBuilder);
+        });
         return userMapper.toDto(users);
     }
 
@@ -217,9 +226,13 @@ public class UserServiceImpl implements UserService {
     }
 
     @Override
-    public void download(List<UserDto> queryAll, HttpServletResponse response) throws IOException {
-        List<Map<String, Object>> list = new ArrayList<>();
-        for (UserDto userDTO : queryAll) {
+    public void download(UserQueryCriteria criteria, HttpServletResponse response) throws IOException {
+        ChunkedQuery<User> users = ChunkedQuery.of(entityManager, User.class, (root, criteriaQuery, criteriaBuilder) -> {
+            QueryHelp.fetch(root, criteriaQuery, "dept");
+            return QueryHelp.getPredicate(root, criteria, criteriaBuilder);
+        });
+        FileUtil.downloadExcel(users, user -> {
+            UserDto userDTO = userMapper.toDto(user);
             List<String> roles = userDTO.getRoles().stream().map(RoleSmallDto::getName).collect(Collectors.toList());
             Map<String, Object> map = new LinkedHashMap<>();
             map.put("用户名", userDTO.getUsername());
@@ -231,9 +244,8 @@ public class UserServiceImpl implements UserService {
             map.put("手机号码", userDTO.getPhone());
             map.put("修改密码的时间", userDTO.getPwdResetTime());
             map.put("创建日期", userDTO.getCreateTime());
-            list.add(map);
-        }
-        FileUtil.downloadExcel(list, response);
+            return map;
+        }, response);
     }
 
     /**
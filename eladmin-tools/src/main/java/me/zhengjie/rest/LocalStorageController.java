@@ -56,7 +56,7 @@ public class LocalStorageController {
     @GetMapping(value = "/download")
     @PreAuthorize("@el.check('storage:list')")
     public void download(HttpServletResponse response, LocalStorageQueryCriteria criteria) throws IOException {
-        localStorageService.download(localStorageService.queryAll(criteria), response);
+        localStorageService.download(criteria, response);
     }
 
     @ApiOperation("上传文件")
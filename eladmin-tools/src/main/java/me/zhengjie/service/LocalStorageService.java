@@ -73,10 +73,10 @@ public interface LocalStorageService {
     void deleteAll(Long[] ids);
 
     /**
-     * 导出数据
-     * @param localStorageDtos 待导出的数据
+     * 导出数据，分段查询并流式写出
+     * @param criteria 查询条件
      * @param response /
      * @throws IOException /
      */
-    void download(List<LocalStorageDto> localStorageDtos, HttpServletResponse response) throws IOException;
+    void download(LocalStorageQueryCriteria criteria, HttpServletResponse response) throws IOException;
 }
\ No newline at end of file
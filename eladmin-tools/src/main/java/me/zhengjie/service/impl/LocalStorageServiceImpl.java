@@ -30,13 +30,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.web.multipart.MultipartFile;
+import javax.persistence.EntityManager;
 import javax.servlet.http.HttpServletResponse;
 
 /**
@@ -50,6 +50,7 @@ public class LocalStorageServiceImpl implements LocalStorageService {
     private final LocalStorageRepository localStorageRepository;
     private final LocalStorageMapper localStorageMapper;
     private final FileProperties properties;
+    private final EntityManager entityManager;
 
     @Override
     // Lambda表达式 https://blog.csdn.net/ycxzuoxin/article/details/80943513
@@ -124,9 +125,10 @@ public class LocalStorageServiceImpl implements LocalStorageService {
     }
     // 下载excel文件
     @Override
-    public void download(List<LocalStorageDto> queryAll, HttpServletResponse response) throws IOException {
-        List<Map<String, Object>> list = new ArrayList<>();
-        for (LocalStorageDto localStorageDTO : queryAll) {
+    public void download(LocalStorageQueryCriteria criteria, HttpServletResponse response) throws IOException {
+        ChunkedQuery<LocalStorage> storages = ChunkedQuery.of(entityManager, LocalStorage.class, (root, criteriaQuery, criteriaBuilder) -> QueryHelp.getPredicate(root,criteria,criteriaBuilder));
+        FileUtil.downloadExcel(storages, localStorage -> {
+            LocalStorageDto localStorageDTO = localStorageMapper.toDto(localStorage);
             Map<String,Object> map = new LinkedHashMap<>();
             map.put("文件名", localStorageDTO.getRealName());
             map.put("备注名", localStorageDTO.getName());
@@ -134,8 +136,7 @@ public class LocalStorageServiceImpl implements LocalStorageService {
             map.put("文件大小", localStorageDTO.getSize());
             map.put("创建者", localStorageDTO.getCreateBy());
             map.put("创建日期", localStorageDTO.getCreateTime());
-            list.add(map);
-        }
-        FileUtil.downloadExcel(list, response);
+            return map;
+        }, response);
     }
 }
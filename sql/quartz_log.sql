@@ -0,0 +1,29 @@
+-- 定时任务日志：异常详情按指纹去重，超出保留期的明细日志汇总为每日统计
+-- 适用于已有数据库升级，执行前请先备份
+ALTER TABLE `sys_quartz_log`
+  ADD COLUMN `exception_fingerprint` varchar(64) DEFAULT NULL COMMENT '异常指纹' AFTER `exception_detail`,
+  ADD KEY `inx_create_time` (`create_time`),
+  ADD KEY `inx_exception_fingerprint` (`exception_fingerprint`);
+
+CREATE TABLE IF NOT EXISTS `sys_quartz_log_exception` (
+  `fingerprint` varchar(64) NOT NULL COMMENT '异常详情的SHA-256',
+  `exception_detail` text DEFAULT NULL COMMENT '异常详情',
+  `update_time` datetime DEFAULT NULL COMMENT '最后使用时间',
+  PRIMARY KEY (`fingerprint`) USING BTREE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 ROW_FORMAT=COMPACT COMMENT='定时任务异常详情';
+
+CREATE TABLE IF NOT EXISTS `sys_quartz_log_stat` (
+  `stat_id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT 'ID',
+  `job_name` varchar(255) NOT NULL DEFAULT '' COMMENT '任务名称',
+  `bean_name` varchar(255) NOT NULL DEFAULT '' COMMENT 'Spring Bean名称',
+  `method_name` varchar(255) NOT NULL DEFAULT '' COMMENT '方法名称',
+  `job_hash` char(64) NOT NULL COMMENT '任务名称、Bean名称、方法名称的SHA-256',
+  `stat_date` date NOT NULL COMMENT '统计日期',
+  `run_count` bigint(20) DEFAULT NULL COMMENT '执行次数',
+  `failure_count` bigint(20) DEFAULT NULL COMMENT '失败次数',
+  `p50_time` bigint(20) DEFAULT NULL COMMENT '耗时中位数/毫秒',
+  `p95_time` bigint(20) DEFAULT NULL COMMENT '耗时95分位/毫秒',
+  `max_time` bigint(20) DEFAULT NULL COMMENT '最长耗时/毫秒',
+  PRIMARY KEY (`stat_id`) USING BTREE,
+  UNIQUE KEY `uniq_job_date` (`stat_date`,`job_hash`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8 ROW_FORMAT=COMPACT COMMENT='定时任务每日执行统计';